@@ -0,0 +1,413 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import ilog.concert.IloException;
+import ilog.concert.IloIntVar;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
+import ilog.cplex.IloCplex;
+import ilog.cplex.IloCplex.UnknownObjectException;
+
+/**
+ * The arc-flow model of Valerio de Carvalho for the Cutting Stock problem. A pattern is a path from
+ * position 0 to the end of the rod in a graph over the positions on the rod; an arc (d, d+w) cuts a piece
+ * of length w at position d. The model sends one unit of flow per rod and needs every length as often as it
+ * is demanded. Its size depends on the rod length and the number of distinct lengths, not on the number
+ * of patterns, and its LP bound equals the column generation bound.
+ *
+ * The graph is reduced while it is built:
+ * - symmetry: pieces are cut in order of decreasing length, so an arc of length w only starts at 0 or at
+ *   the head of an arc of a length of at least w, and at most the demand of w arcs of w follow each other
+ * - compression: a position from which no piece can be cut any more is merged with the end of the rod,
+ *   so the waste is never modelled by separate loss arcs
+ */
+public class ArcFlowModel {
+
+	private final List<Piece> pieces;
+	private final int ROD_LENGTH;
+	private IloCplex cplex;
+	// item types: distinct lengths, decreasing, with their demand
+	private int[] lengths;
+	private int[] demands;
+	// arcs: tail and head node, and the item type (-1 for a loss arc)
+	private int[] tail;
+	private int[] head;
+	private int[] type;
+	private int nodes;
+	private int sink;
+	// variables
+	private IloNumVar[] f;
+
+	public ArcFlowModel(List<Piece> pieces, int rodLength) throws IloException
+	{
+		this.pieces = pieces;
+		this.ROD_LENGTH = rodLength;
+		cplex = new IloCplex();
+
+		buildItemTypes();
+		buildGraph();
+		addVariables();
+		addObjective();
+		addFlowConstraints();
+		addDemandConstraints();
+		// export for debugging only
+		if (Log.isDebugEnabled()) {
+			cplex.exportModel("arcflow.lp");
+		}
+		cplex.setOut(null);
+	}
+
+	/**
+	 * Solve the model
+	 * @throws IloException
+	 */
+	public void solve() throws IloException
+	{
+		cplex.solve();
+	}
+
+	/**
+	 * Solve the LP relaxation
+	 * @throws IloException
+	 */
+	public void solveLP() throws IloException
+	{
+		for (IloNumVar var : f) {
+			cplex.add(cplex.conversion(var, IloNumVarType.Float));
+		}
+		cplex.solve();
+	}
+
+	/**
+	 * Solve the model within the limits of the options. Improving solutions and bounds are passed
+	 * to the listener; unlike a model over a restricted set of patterns, the bound holds for the instance.
+	 * @param options
+	 * @param listener
+	 * @return
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern> solve(SolveOptions options, SolveListener<Pattern> listener) throws IloException
+	{
+		IloCplex.Aborter aborter = options.apply(cplex);
+		if (cplex.isMIP()) {
+			cplex.use(new IncumbentReporter(options, listener) {
+				@Override
+				protected List<Pattern> extract() throws IloException {
+					return decompose(getValues(f));
+				}
+			});
+		}
+		try {
+			if (!options.isStopped()) {
+				cplex.solve();
+			}
+		} finally {
+			cplex.clearCallbacks();
+			options.release(cplex, aborter);
+		}
+		double objective = Double.POSITIVE_INFINITY;
+		List<Pattern> result = null;
+		double bound = Double.NEGATIVE_INFINITY;
+		if (cplex.isPrimalFeasible()) {
+			objective = getObjective();
+			result = getPatterns();
+			bound = cplex.isMIP() ? cplex.getBestObjValue() : objective;
+		}
+		return SolveResult.of(objective, bound, result, options, SolveResult.Status.OPTIMAL);
+	}
+
+	/**
+	 * Groups the pieces by length
+	 */
+	private void buildItemTypes() {
+		List<Piece> sorted = new ArrayList<Piece>(pieces);
+		Collections.sort(sorted, new Comparator<Piece>() {
+			@Override
+			public int compare(Piece p1, Piece p2) {
+				return p2.getLength() - p1.getLength();
+			}
+		});
+		int[] l = new int[sorted.size()];
+		int[] d = new int[sorted.size()];
+		int count = 0;
+		for (Piece p : sorted) {
+			if (p.getLength() > ROD_LENGTH) {
+				throw new IllegalArgumentException("Piece " + p + " is longer than the rod");
+			}
+			if (count > 0 && l[count - 1] == p.getLength()) {
+				d[count - 1]++;
+			} else {
+				l[count] = p.getLength();
+				d[count] = 1;
+				count++;
+			}
+		}
+		lengths = Arrays.copyOf(l, count);
+		demands = Arrays.copyOf(d, count);
+	}
+
+	/**
+	 * Builds the reduced and compressed graph over the positions 0..ROD_LENGTH
+	 */
+	private void buildGraph() {
+		int types = lengths.length;
+		BitSet reached = new BitSet(ROD_LENGTH + 1);
+		reached.set(0);
+		// item arcs per position, before compression: arcTail, arcType
+		int[] arcTail = new int[16];
+		int[] arcType = new int[16];
+		int arcs = 0;
+		for (int t = 0; t < types; t++) {
+			int w = lengths[t];
+			// left[d]: how many more arcs of this type may follow each other from d
+			int[] left = new int[ROD_LENGTH + 1];
+			for (int d = reached.nextSetBit(0); d >= 0; d = reached.nextSetBit(d + 1)) {
+				left[d] = demands[t];
+			}
+			for (int d = 0; d + w <= ROD_LENGTH; d++) {
+				if (left[d] == 0) {
+					continue;
+				}
+				if (arcs == arcTail.length) {
+					arcTail = Arrays.copyOf(arcTail, 2 * arcs);
+					arcType = Arrays.copyOf(arcType, 2 * arcs);
+				}
+				arcTail[arcs] = d;
+				arcType[arcs] = t;
+				arcs++;
+				left[d + w] = Math.max(left[d + w], left[d] - 1);
+				reached.set(d + w);
+			}
+		}
+		// compression: positions without outgoing item arcs become the sink
+		BitSet hasOut = new BitSet(ROD_LENGTH + 1);
+		for (int a = 0; a < arcs; a++) {
+			hasOut.set(arcTail[a]);
+		}
+		int[] nodeOf = new int[ROD_LENGTH + 1];
+		Arrays.fill(nodeOf, -1);
+		nodes = 0;
+		for (int d = hasOut.nextSetBit(0); d >= 0; d = hasOut.nextSetBit(d + 1)) {
+			nodeOf[d] = nodes;
+			nodes++;
+		}
+		sink = nodes;
+		nodes++;
+		if (nodeOf[0] < 0) {
+			nodeOf[0] = sink;		// no piece at all
+		}
+		// item arcs, then a loss arc from every internal node (but the source) to the sink
+		int losses = Math.max(0, hasOut.cardinality() - 1);
+		tail = new int[arcs + losses];
+		head = new int[arcs + losses];
+		type = new int[arcs + losses];
+		for (int a = 0; a < arcs; a++) {
+			int end = arcTail[a] + lengths[arcType[a]];
+			tail[a] = nodeOf[arcTail[a]];
+			head[a] = nodeOf[end] >= 0 ? nodeOf[end] : sink;
+			type[a] = arcType[a];
+		}
+		int a = arcs;
+		for (int d = hasOut.nextSetBit(1); d >= 0; d = hasOut.nextSetBit(d + 1)) {
+			tail[a] = nodeOf[d];
+			head[a] = sink;
+			type[a] = -1;
+			a++;
+		}
+		Log.debug("Arc-flow graph: {} nodes, {} arcs", nodes, tail.length);
+	}
+
+	/**
+	 * Add the vars to the model: the flow on each arc
+	 * @throws IloException
+	 */
+	private void addVariables() throws IloException
+	{
+		f = new IloNumVar[tail.length];
+		for (int a = 0; a < f.length; a++) {
+			IloIntVar var = cplex.intVar(0, pieces.size(), "f" + tail[a] + "_" + head[a] + (type[a] >= 0 ? "_" + lengths[type[a]] : "_loss"));
+			f[a] = var;
+		}
+	}
+
+	/**
+	 * Add the objective: the flow out of the source, which is the number of rods
+	 * @throws IloException
+	 */
+	private void addObjective() throws IloException
+	{
+		IloLinearNumExpr obj = cplex.linearNumExpr();
+		for (int a = 0; a < f.length; a++) {
+			if (tail[a] == 0 && head[a] != 0) {
+				obj.addTerm(1, f[a]);
+			}
+		}
+		cplex.addMinimize(obj);
+	}
+
+	/**
+	 * Adds flow conservation for every node except the source and the sink
+	 * @throws IloException
+	 */
+	private void addFlowConstraints() throws IloException
+	{
+		IloLinearNumExpr[] balance = new IloLinearNumExpr[nodes];
+		for (int v = 0; v < nodes; v++) {
+			balance[v] = cplex.linearNumExpr();
+		}
+		for (int a = 0; a < f.length; a++) {
+			balance[head[a]].addTerm(1, f[a]);
+			balance[tail[a]].addTerm(-1, f[a]);
+		}
+		for (int v = 1; v < sink; v++) {
+			cplex.addEq(balance[v], 0, "flow" + v);
+		}
+	}
+
+	/**
+	 * Adds the constraints that make sure every length is cut as often as demanded
+	 * @throws IloException
+	 */
+	private void addDemandConstraints() throws IloException
+	{
+		IloLinearNumExpr[] cut = new IloLinearNumExpr[lengths.length];
+		for (int t = 0; t < lengths.length; t++) {
+			cut[t] = cplex.linearNumExpr();
+		}
+		for (int a = 0; a < f.length; a++) {
+			if (type[a] >= 0) {
+				cut[type[a]].addTerm(1, f[a]);
+			}
+		}
+		for (int t = 0; t < lengths.length; t++) {
+			cplex.addGe(cut[t], demands[t], "demand" + lengths[t]);
+		}
+	}
+
+	/**
+	 * Splits an integral flow into paths from the source to the sink, and gives every path the pieces of its
+	 * lengths. Pieces cut more often than demanded are left out.
+	 * @param flow value per arc
+	 * @return one pattern per rod
+	 */
+	private List<Pattern> decompose(double[] flow) {
+		int[] remaining = new int[flow.length];
+		for (int a = 0; a < flow.length; a++) {
+			remaining[a] = (int) Math.round(flow[a]);
+		}
+		// outgoing arcs per node
+		int[] start = new int[nodes + 1];
+		for (int a = 0; a < tail.length; a++) {
+			start[tail[a] + 1]++;
+		}
+		for (int v = 0; v < nodes; v++) {
+			start[v + 1] += start[v];
+		}
+		int[] out = new int[tail.length];
+		int[] fill = Arrays.copyOf(start, nodes);
+		for (int a = 0; a < tail.length; a++) {
+			out[fill[tail[a]]] = a;
+			fill[tail[a]]++;
+		}
+		// the pieces of every length, to hand out
+		List<ArrayDeque<Piece>> available = new ArrayList<ArrayDeque<Piece>>();
+		for (int t = 0; t < lengths.length; t++) {
+			available.add(new ArrayDeque<Piece>());
+		}
+		for (Piece p : pieces) {
+			available.get(typeOf(p.getLength())).add(p);
+		}
+		List<Pattern> result = new ArrayList<Pattern>();
+		int[] next = Arrays.copyOf(start, nodes);
+		while (true) {
+			// find a path with flow left, starting at the source
+			List<Piece> rod = new ArrayList<Piece>();
+			int v = 0;
+			boolean found = false;
+			while (v != sink) {
+				int a = -1;
+				while (next[v] < start[v + 1]) {
+					if (remaining[out[next[v]]] > 0) {
+						a = out[next[v]];
+						break;
+					}
+					next[v]++;
+				}
+				if (a < 0) {
+					break;
+				}
+				found = true;
+				remaining[a]--;
+				if (type[a] >= 0 && !available.get(type[a]).isEmpty()) {
+					rod.add(available.get(type[a]).poll());
+				}
+				v = head[a];
+			}
+			if (!found) {
+				break;
+			}
+			if (!rod.isEmpty()) {
+				result.add(new Pattern(result.size() + 1, rod));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The item type of a length; lengths is sorted decreasingly
+	 */
+	private int typeOf(int length) {
+		int lo = 0;
+		int hi = lengths.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (lengths[mid] > length) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	// methods to retrieve information about the solution
+	/**
+	 * Return the objective value, as a double
+	 * @return
+	 * @throws IloException
+	 */
+	public double getObjective() throws IloException {
+		return cplex.getObjValue();
+	}
+
+	/**
+	 * Returns the patterns of the solution, one per rod. Needs an integral solution.
+	 * @return
+	 * @throws IloException
+	 * @throws UnknownObjectException
+	 */
+	public List<Pattern> getPatterns() throws UnknownObjectException, IloException {
+		return decompose(cplex.getValues(f));
+	}
+
+	/**
+	 * Number of arcs in the graph, after the reductions
+	 * @return
+	 */
+	public int getArcCount() {
+		return tail.length;
+	}
+
+	/**
+	 * Releases the native CPLEX resources. The model cannot be used afterwards.
+	 */
+	public void end() {
+		cplex.end();
+	}
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import ilog.concert.IloException;
+
+/**
+ * Scaling benchmark on generated instances. For each size it times complete enumeration
+ * (createFeasiblePatterns + the LP of Model2), column generation (ModelCG) and price-and-branch
+ * (the MIP of Model2 over the columns found by column generation) and the arc-flow MIP (ArcFlowModel).
+ * The results are printed as CSV, one line per instance, so the scaling curves can be charted.
+ */
+public class Benchmark {
+
+	// enumeration is exponential: above this number of pieces it is skipped
+	private static final int MAX_ENUMERATION_PIECES = 30;
+	private static final int MAX_CG_ITERATIONS = 10000;
+
+	/**
+	 * Usage: Benchmark [class] [seed] [itemTypes...]
+	 */
+	public static void main(String[] args) throws IloException {
+		InstanceGenerator.InstanceClass instanceClass = InstanceGenerator.InstanceClass.FALKENAUER_U;
+		long seed = 1;
+		List<Integer> sizes = new ArrayList<Integer>();
+		if (args.length > 0) {
+			instanceClass = InstanceGenerator.InstanceClass.valueOf(args[0]);
+		}
+		if (args.length > 1) {
+			seed = Long.parseLong(args[1]);
+		}
+		for (int i = 2; i < args.length; i++) {
+			sizes.add(Integer.parseInt(args[i]));
+		}
+		if (sizes.isEmpty()) {
+			for (int n = 10; n <= 640; n = n * 2) {
+				sizes.add(n);
+			}
+		}
+
+		System.out.println("class,itemTypes,pieces,rodLength,enumPatterns,enumMs,enumLP,cgColumns,cgMs,cgMasterMs,cgPricingMs,cgLP,pbMs,pbRods,afArcs,afMs,afRods");
+		for (int n : sizes) {
+			InstanceGenerator generator = new InstanceGenerator(instanceClass, n, seed);
+			List<Piece> pieces = generator.generate();
+			int rodLength = generator.getRodLength();
+			StringBuilder line = new StringBuilder();
+			line.append(instanceClass).append(',').append(n).append(',').append(pieces.size()).append(',').append(rodLength);
+
+			// complete enumeration
+			if (pieces.size() <= MAX_ENUMERATION_PIECES) {
+				long start = System.nanoTime();
+				ColumnStore all = new ColumnStore(pieces);
+				Main.createFeasiblePatterns(pieces, rodLength, all);
+				Model2 enumModel = new Model2(all, rodLength, CostModel.RODS);
+				try {
+					enumModel.solveLP();
+					line.append(',').append(all.size()).append(',').append(millis(start)).append(',').append(enumModel.getObjective());
+				} finally {
+					enumModel.end();
+				}
+			} else {
+				line.append(",,,");
+			}
+
+			// column generation, starting from first fit decreasing
+			long start = System.nanoTime();
+			List<Pattern> columns = Heuristics.firstFitDecreasing(pieces, rodLength);
+			ModelCG cg = new ModelCG(columns, new ArrayList<Piece>(pieces), rodLength);
+			try {
+				cg.solveLPColGen(MAX_CG_ITERATIONS);
+				cg.solve();
+				ColGenMetrics metrics = cg.getMetrics();
+				line.append(',').append(columns.size()).append(',').append(millis(start))
+					.append(',').append(metrics.getTotalMasterNanos() / 1000000)
+					.append(',').append(metrics.getTotalPricingNanos() / 1000000)
+					.append(',').append(cg.getObjective());
+			} finally {
+				cg.end();
+			}
+
+			// price-and-branch: integer model over the generated columns
+			start = System.nanoTime();
+			Model2 pb = new Model2(columns, pieces);
+			try {
+				pb.solve();
+				line.append(',').append(millis(start)).append(',').append(pb.getObjective());
+			} finally {
+				pb.end();
+			}
+
+			// arc-flow: integer model over the rod positions
+			start = System.nanoTime();
+			ArcFlowModel af = new ArcFlowModel(pieces, rodLength);
+			try {
+				af.solve();
+				line.append(',').append(af.getArcCount()).append(',').append(millis(start)).append(',').append(af.getObjective());
+			} finally {
+				af.end();
+			}
+
+			System.out.println(line);
+		}
+	}
+
+	private static long millis(long start) {
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
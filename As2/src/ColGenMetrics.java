@@ -0,0 +1,317 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects per-iteration statistics of a column generation run: time spent in the master and in the
+ * pricing (per strategy), columns added, reduced cost, the LP bound of the restricted master, the
+ * Lagrangian (Farley) lower bound, the size of the master and the bytes allocated by the solving thread.
+ * The records can be exported as CSV or JSON.
+ */
+public class ColGenMetrics {
+
+	public static final String HEURISTIC = "heuristic";
+	public static final String KNAPSACK = "knapsack";
+	public static final String POOL = "pool";
+
+	/**
+	 * The statistics of one column generation iteration
+	 */
+	public static class Iteration {
+		private final int number;
+		private long masterNanos;
+		private long heuristicNanos;
+		private long knapsackNanos;
+		private long poolNanos;
+		private String strategy;
+		private int columnsAdded;
+		private double reducedCost = Double.NaN;
+		private double lpBound = Double.NaN;
+		private double lagrangianBound = Double.NaN;
+		private int masterColumns;
+		private int masterRows;
+		private long allocatedBytes = -1;
+
+		Iteration(int number) {
+			this.number = number;
+		}
+
+		// getters
+		public int getNumber() {
+			return number;
+		}
+
+		public long getMasterNanos() {
+			return masterNanos;
+		}
+
+		public long getHeuristicNanos() {
+			return heuristicNanos;
+		}
+
+		public long getKnapsackNanos() {
+			return knapsackNanos;
+		}
+
+		public long getPoolNanos() {
+			return poolNanos;
+		}
+
+		public String getStrategy() {
+			return strategy;
+		}
+
+		public int getColumnsAdded() {
+			return columnsAdded;
+		}
+
+		public double getReducedCost() {
+			return reducedCost;
+		}
+
+		public double getLpBound() {
+			return lpBound;
+		}
+
+		public double getLagrangianBound() {
+			return lagrangianBound;
+		}
+
+		public int getMasterColumns() {
+			return masterColumns;
+		}
+
+		public int getMasterRows() {
+			return masterRows;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+	}
+
+	private final List<Iteration> iterations = new ArrayList<Iteration>();
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private Iteration current;
+	private long phaseStart;
+	private long allocationStart;
+
+	/**
+	 * Starts the record of a new iteration
+	 * @param masterColumns
+	 * @param masterRows
+	 */
+	public void startIteration(int masterColumns, int masterRows) {
+		current = new Iteration(iterations.size());
+		current.masterColumns = masterColumns;
+		current.masterRows = masterRows;
+		iterations.add(current);
+		allocationStart = allocatedBytes();
+		phaseStart = System.nanoTime();
+	}
+
+	/**
+	 * Ends the master solve of the current iteration
+	 * @param lpBound the objective of the restricted master
+	 */
+	public void masterSolved(double lpBound) {
+		long now = System.nanoTime();
+		current.masterNanos = now - phaseStart;
+		current.lpBound = lpBound;
+		phaseStart = now;
+	}
+
+	/**
+	 * Ends a pricing phase of the current iteration. The last strategy that ran is the one that produced the column.
+	 * @param strategy POOL, HEURISTIC or KNAPSACK
+	 * @param reducedCost
+	 */
+	public void priced(String strategy, double reducedCost) {
+		long now = System.nanoTime();
+		if (KNAPSACK.equals(strategy)) {
+			current.knapsackNanos += now - phaseStart;
+			// exact pricing: Farley's bound z / (1 - rc) holds because every column costs 1
+			if (reducedCost < 1) {
+				current.lagrangianBound = current.lpBound / (1 - reducedCost);
+			}
+		} else if (POOL.equals(strategy)) {
+			current.poolNanos += now - phaseStart;
+		} else {
+			current.heuristicNanos += now - phaseStart;
+		}
+		current.strategy = strategy;
+		current.reducedCost = reducedCost;
+		phaseStart = now;
+	}
+
+	/**
+	 * Ends the current iteration
+	 * @param columnsAdded
+	 */
+	public void endIteration(int columnsAdded) {
+		current.columnsAdded = columnsAdded;
+		long allocated = allocatedBytes();
+		if (allocated >= 0 && allocationStart >= 0) {
+			current.allocatedBytes = allocated - allocationStart;
+		}
+	}
+
+	// getters
+	public List<Iteration> getIterations() {
+		return Collections.unmodifiableList(iterations);
+	}
+
+	/**
+	 * Number of columns that were found by the heuristic
+	 * @return
+	 */
+	public int getHeuristicColumns() {
+		int result = 0;
+		for (Iteration it : iterations) {
+			if (it.columnsAdded > 0 && HEURISTIC.equals(it.strategy)) {
+				result = result + it.columnsAdded;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Number of columns that were taken from the pool
+	 * @return
+	 */
+	public int getPoolColumns() {
+		int result = 0;
+		for (Iteration it : iterations) {
+			if (it.columnsAdded > 0 && POOL.equals(it.strategy)) {
+				result = result + it.columnsAdded;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The best Lagrangian lower bound seen during the run, NaN if the knapsack never ran
+	 * @return
+	 */
+	public double getBestLagrangianBound() {
+		double result = Double.NaN;
+		for (Iteration it : iterations) {
+			if (!Double.isNaN(it.lagrangianBound) && (Double.isNaN(result) || it.lagrangianBound > result)) {
+				result = it.lagrangianBound;
+			}
+		}
+		return result;
+	}
+
+	public long getTotalMasterNanos() {
+		long result = 0;
+		for (Iteration it : iterations) {
+			result = result + it.masterNanos;
+		}
+		return result;
+	}
+
+	public long getTotalPricingNanos() {
+		long result = 0;
+		for (Iteration it : iterations) {
+			result = result + it.poolNanos + it.heuristicNanos + it.knapsackNanos;
+		}
+		return result;
+	}
+
+	/**
+	 * Bytes allocated by the current thread, or -1 if the JVM cannot measure it
+	 */
+	private long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+				return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	// export methods
+	public String toCsv() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("iteration,masterNanos,poolNanos,heuristicNanos,knapsackNanos,strategy,columnsAdded,reducedCost,lpBound,lagrangianBound,masterColumns,masterRows,allocatedBytes\n");
+		for (Iteration it : iterations) {
+			sb.append(it.number).append(',')
+				.append(it.masterNanos).append(',')
+				.append(it.poolNanos).append(',')
+				.append(it.heuristicNanos).append(',')
+				.append(it.knapsackNanos).append(',')
+				.append(it.strategy == null ? "" : it.strategy).append(',')
+				.append(it.columnsAdded).append(',')
+				.append(csvNumber(it.reducedCost)).append(',')
+				.append(csvNumber(it.lpBound)).append(',')
+				.append(csvNumber(it.lagrangianBound)).append(',')
+				.append(it.masterColumns).append(',')
+				.append(it.masterRows).append(',')
+				.append(it.allocatedBytes).append('\n');
+		}
+		return sb.toString();
+	}
+
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"heuristicColumns\":").append(getHeuristicColumns())
+			.append(",\"poolColumns\":").append(getPoolColumns())
+			.append(",\"bestLagrangianBound\":").append(jsonNumber(getBestLagrangianBound()))
+			.append(",\"masterNanos\":").append(getTotalMasterNanos())
+			.append(",\"pricingNanos\":").append(getTotalPricingNanos())
+			.append(",\"iterations\":[");
+		for (int i = 0; i < iterations.size(); i++) {
+			Iteration it = iterations.get(i);
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"iteration\":").append(it.number)
+				.append(",\"masterNanos\":").append(it.masterNanos)
+				.append(",\"poolNanos\":").append(it.poolNanos)
+				.append(",\"heuristicNanos\":").append(it.heuristicNanos)
+				.append(",\"knapsackNanos\":").append(it.knapsackNanos)
+				.append(",\"strategy\":").append(it.strategy == null ? "null" : "\"" + it.strategy + "\"")
+				.append(",\"columnsAdded\":").append(it.columnsAdded)
+				.append(",\"reducedCost\":").append(jsonNumber(it.reducedCost))
+				.append(",\"lpBound\":").append(jsonNumber(it.lpBound))
+				.append(",\"lagrangianBound\":").append(jsonNumber(it.lagrangianBound))
+				.append(",\"masterColumns\":").append(it.masterColumns)
+				.append(",\"masterRows\":").append(it.masterRows)
+				.append(",\"allocatedBytes\":").append(it.allocatedBytes)
+				.append('}');
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the metrics to a file; the format is chosen by the extension (.json, otherwise CSV)
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			out.write(file.getName().endsWith(".json") ? toJson() : toCsv());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String csvNumber(double value) {
+		return Double.isNaN(value) ? "" : Double.toString(value);
+	}
+
+	private static String jsonNumber(double value) {
+		return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+	}
+}
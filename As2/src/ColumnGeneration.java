@@ -0,0 +1,205 @@
+import java.util.List;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+/**
+ * The column generation loop of ModelCG and ModelCG2D. The subclass owns the master: its columns, rows
+ * and duals; a Pricer finds the columns that enter it. Every iteration solves the master within the
+ * SolveOptions, rounds its solution up, which is a feasible solution, and prices; improvements of the
+ * rounded solution and of the lower bound are passed to the SolveListener, and ColGenMetrics records
+ * every iteration.
+ * @param <C> the type of the columns, and of the solutions passed to the listener
+ */
+public abstract class ColumnGeneration<C> {
+
+	/**
+	 * Finds columns with a negative reduced cost for the duals of the master
+	 * @param <C>
+	 */
+	interface Pricer<C> {
+
+		/**
+		 * Prices the duals. Every strategy that runs reports the reduced cost of its best column to the
+		 * metrics, relative to the cost of a column; a KNAPSACK strategy prices exactly, so its reduced cost
+		 * gives Farley's bound.
+		 * @param duals of the rows of the master
+		 * @param index of the first new column
+		 * @param metrics
+		 * @return the columns to add, empty if no column has a negative reduced cost
+		 * @throws IloException
+		 */
+		List<C> price(double[] duals, int index, ColGenMetrics metrics) throws IloException;
+	}
+
+	protected final IloCplex cplex;
+	// statistics of the last column generation run
+	private ColGenMetrics metrics;
+	private double bound = Double.NEGATIVE_INFINITY;
+
+	protected ColumnGeneration() throws IloException {
+		cplex = new IloCplex();
+	}
+
+	/**
+	 * Number of columns in the master
+	 * @return
+	 */
+	protected abstract int getColumnCount();
+
+	/**
+	 * Number of rows in the master
+	 * @return
+	 */
+	protected abstract int getRowCount();
+
+	/**
+	 * Adds a column to the master
+	 * @param column
+	 * @throws IloException
+	 */
+	protected abstract void addColumn(C column) throws IloException;
+
+	/**
+	 * Returns the duals of the rows, read with one call to CPLEX.
+	 * @return
+	 * @throws IloException
+	 */
+	public abstract double[] getDuals() throws IloException;
+
+	/**
+	 * Returns the columns of the solution, each as often as it is cut. Fractional values are rounded up.
+	 * @return
+	 * @throws IloException
+	 */
+	public abstract List<C> getPatterns() throws IloException;
+
+	/**
+	 * The cost of a column in the objective of the master; the bounds are divided by it, so they count
+	 * columns
+	 * @return
+	 */
+	protected double getColumnCost() {
+		return 1;
+	}
+
+	/**
+	 * True if the objective of the master only counts columns, so its bounds are bounds on their number
+	 * @return
+	 */
+	protected boolean isColumnObjective() {
+		return true;
+	}
+
+	/**
+	 * Solve the model
+	 * @throws IloException
+	 */
+	public void solve() throws IloException
+	{
+		cplex.solve();
+	}
+
+	/**
+	 * Runs column generation for at most the given number of iterations and within the limits of the
+	 * options. It stops when the pricer finds no column, and then the LP is solved.
+	 * @param iterations
+	 * @param options
+	 * @param listener
+	 * @param pricer
+	 * @return the best rounded solution and the best bound
+	 * @throws IloException
+	 */
+	protected SolveResult<C> generate(int iterations, SolveOptions options, SolveListener<C> listener, Pricer<C> pricer) throws IloException
+	{
+		options.start();
+		metrics = new ColGenMetrics();
+		bound = Double.NEGATIVE_INFINITY;
+		double bestObjective = Double.POSITIVE_INFINITY;
+		List<C> best = null;
+		SolveResult.Status limitStatus = SolveResult.Status.ITERATION_LIMIT;
+		for (int i = 0; i < iterations && !options.isStopped(); i++) {
+			metrics.startIteration(getColumnCount(), getRowCount());
+			// solve the restricted master problem
+			IloCplex.Aborter aborter = options.apply(cplex);
+			try {
+				this.solve();
+			} finally {
+				options.release(cplex, aborter);
+			}
+			if (cplex.getStatus() != IloCplex.Status.Optimal) {
+				// interrupted: there are no duals to price with
+				metrics.endIteration(0);
+				break;
+			}
+			double objectiveValue = cplex.getObjValue();
+			metrics.masterSolved(objectiveValue);
+			if (Log.isDebugEnabled()) {
+				Log.debug("Iteration {}: {}", i, objectiveValue);
+			}
+			// round the LP solution up
+			List<C> rounded = getPatterns();
+			if (rounded.size() < bestObjective) {
+				bestObjective = rounded.size();
+				best = rounded;
+				listener.improvedSolution(bestObjective, best);
+			}
+			List<C> columns = pricer.price(getDuals(), getColumnCount() + 1, metrics);
+			// a better lower bound: the LP value itself at convergence, otherwise Farley's bound (NaN when the
+			// pricing was not exact). Both are in costs: the bound on columns is the bound divided by their cost
+			double newBound = (columns.isEmpty() ? objectiveValue : metrics.getIterations().get(i).getLagrangianBound()) / getColumnCost();
+			if (isColumnObjective() && newBound > bound + 1e-9) {
+				bound = newBound;
+				listener.improvedBound(bound);
+			}
+			if (columns.isEmpty()) {
+				metrics.endIteration(0);
+				limitStatus = SolveResult.Status.LP_OPTIMAL;
+				break;
+			}
+			if (Log.isDebugEnabled()) {
+				// the columns are rendered on the logging thread
+				Log.debug("{} columns added in iteration {}, first: {} with reduced cost: {}",
+						columns.size(), i, columns.get(0), metrics.getIterations().get(i).getReducedCost());
+			}
+			for (C column : columns) {
+				addColumn(column);		// enters the objective and the rows directly
+			}
+			metrics.endIteration(columns.size());
+		}
+		return SolveResult.of(bestObjective, bound, best, options, limitStatus);
+	}
+
+	// methods to retrieve information about the solution
+	/**
+	 * Return the objective value, as a double
+	 * @return
+	 * @throws IloException
+	 */
+	public double getObjective() throws IloException {
+		return cplex.getObjValue();
+	}
+
+	/**
+	 * Best lower bound on the number of columns found by the last column generation run
+	 * @return
+	 */
+	public double getBound() {
+		return bound;
+	}
+
+	/**
+	 * Returns the statistics of the last column generation run, or null if it has not run yet.
+	 * @return
+	 */
+	public ColGenMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Releases the native CPLEX resources. The model cannot be used afterwards.
+	 */
+	public void end() {
+		cplex.end();
+	}
+}
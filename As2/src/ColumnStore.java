@@ -0,0 +1,324 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Append-only store of columns (patterns) outside the Java heap, for pools of millions of columns.
+ * A column is a fixed-size record in a direct ByteBuffer: a header with its total length, number of
+ * pieces, index and origin, followed by a bitset over the pieces of the store (bit i is piece i of the
+ * list the store was made for). Buffers are added as the store grows and never move, so the heap only
+ * holds the list of buffers, however many columns there are.
+ *
+ * Columns are read through a View, a flyweight that is moved from column to column; Pattern objects are
+ * only made for the columns that are asked for, such as the columns of a solution.
+ * Appending is not thread safe; reading is, as long as nothing is appended at the same time.
+ */
+public class ColumnStore {
+
+	/**
+	 * Where a column comes from
+	 */
+	public static final int ORIGIN_INPUT = 0;
+	public static final int ORIGIN_ENUMERATED = 1;
+	public static final int ORIGIN_GENERATED = 2;
+
+	private static final int CHUNK_BYTES = 1 << 20;
+	// header: length, number of pieces, index, origin
+	private static final int LENGTH = 0;
+	private static final int COUNT = 4;
+	private static final int INDEX = 8;
+	private static final int ORIGIN = 12;
+	private static final int HEADER_BYTES = 16;
+
+	private final List<Piece> pieces;
+	// position of every piece in the list; the ids of the pieces belong to the models
+	private final Map<Piece, Integer> positions;
+	private final int words;
+	private final int recordBytes;
+	private final int recordsPerChunk;
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private int size;
+
+	/**
+	 * Constructor. The store keeps its own copy of the list; the pieces themselves are not changed.
+	 * @param pieces the pieces the bitsets refer to
+	 */
+	public ColumnStore(List<Piece> pieces) {
+		this.pieces = new ArrayList<Piece>(pieces);
+		this.positions = new IdentityHashMap<Piece, Integer>();
+		for (int i = 0; i < pieces.size(); i++) {
+			positions.put(pieces.get(i), i);
+		}
+		this.words = Math.max(1, (pieces.size() + 63) / 64);
+		this.recordBytes = HEADER_BYTES + 8 * words;
+		this.recordsPerChunk = Math.max(1, CHUNK_BYTES / recordBytes);
+	}
+
+	/**
+	 * Reads patterns in the format of Main.readPatterns, a row of 0s and 1s per pattern, straight into a store
+	 * @param file
+	 * @param pieces
+	 * @return
+	 * @throws IOException
+	 */
+	public static ColumnStore load(File file, List<Piece> pieces) throws IOException {
+		ColumnStore store = new ColumnStore(pieces);
+		long[] bits = new long[store.words];
+		Scanner s = new Scanner(file);
+		try {
+			while (s.hasNextLine()) {
+				String line = s.nextLine();
+				Arrays.fill(bits, 0);
+				int piece = 0;
+				for (int c = 0; c < line.length() && piece < pieces.size(); c++) {
+					char ch = line.charAt(c);
+					if (ch == '1') {
+						bits[piece >>> 6] |= 1L << piece;
+						piece++;
+					} else if (ch == '0') {
+						piece++;
+					}
+				}
+				store.add(bits, store.size + 1, ORIGIN_INPUT);
+			}
+		} finally {
+			s.close();
+		}
+		return store;
+	}
+
+	/**
+	 * Adds a pattern
+	 * @param pattern
+	 * @param origin
+	 * @return the number of the new column
+	 * @throws IllegalArgumentException if the pattern holds a piece that is not in the store
+	 */
+	public int add(Pattern pattern, int origin) {
+		long[] bits = new long[words];
+		for (int k = 0; k < pattern.size(); k++) {
+			Piece p = pattern.getPiece(k);
+			Integer i = positions.get(p);
+			if (i == null) {
+				throw new IllegalArgumentException("Piece " + p + " of pattern " + pattern.getIndex() + " is not in the store");
+			}
+			bits[i >>> 6] |= 1L << i;
+		}
+		return add(bits, pattern.getIndex(), origin);
+	}
+
+	/**
+	 * True if the piece is one of the pieces of the store
+	 * @param p
+	 * @return
+	 */
+	public boolean contains(Piece p) {
+		return positions.containsKey(p);
+	}
+
+	/**
+	 * Adds a column as a bitset over the pieces
+	 * @param bits words() longs
+	 * @param index label of the column
+	 * @param origin
+	 * @return the number of the new column
+	 */
+	public int add(long[] bits, int index, int origin) {
+		int length = 0;
+		int count = 0;
+		for (int w = 0; w < words; w++) {
+			long word = bits[w];
+			count = count + Long.bitCount(word);
+			while (word != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(word);
+				length = length + pieces.get(i).getLength();
+				word = word & (word - 1);
+			}
+		}
+		if (size == chunks.size() * recordsPerChunk) {
+			chunks.add(ByteBuffer.allocateDirect(recordsPerChunk * recordBytes).order(ByteOrder.nativeOrder()));
+		}
+		ByteBuffer chunk = chunks.get(size / recordsPerChunk);
+		int base = (size % recordsPerChunk) * recordBytes;
+		chunk.putInt(base + LENGTH, length);
+		chunk.putInt(base + COUNT, count);
+		chunk.putInt(base + INDEX, index);
+		chunk.putInt(base + ORIGIN, origin);
+		for (int w = 0; w < words; w++) {
+			chunk.putLong(base + HEADER_BYTES + 8 * w, bits[w]);
+		}
+		size++;
+		return size - 1;
+	}
+
+	/**
+	 * Number of columns
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Number of longs in the bitset of a column
+	 * @return
+	 */
+	public int words() {
+		return words;
+	}
+
+	public List<Piece> getPieces() {
+		return Collections.unmodifiableList(pieces);
+	}
+
+	/**
+	 * Bytes in use outside the heap
+	 * @return
+	 */
+	public long offHeapBytes() {
+		return (long) chunks.size() * recordsPerChunk * recordBytes;
+	}
+
+	/**
+	 * A new view, not on any column yet
+	 * @return
+	 */
+	public View view() {
+		return new View();
+	}
+
+	/**
+	 * Makes a Pattern of a column
+	 * @param column
+	 * @return
+	 */
+	public Pattern toPattern(int column) {
+		return view().moveTo(column).toPattern();
+	}
+
+	/**
+	 * Flyweight over one column at a time
+	 */
+	public class View {
+		private ByteBuffer chunk;
+		private int base;
+		private int column = -1;
+
+		/**
+		 * Moves the view to a column
+		 * @param column
+		 * @return this view
+		 */
+		public View moveTo(int column) {
+			if (column < 0 || column >= size) {
+				throw new IndexOutOfBoundsException("Column " + column + " of " + size);
+			}
+			this.column = column;
+			this.chunk = chunks.get(column / recordsPerChunk);
+			this.base = (column % recordsPerChunk) * recordBytes;
+			return this;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		/**
+		 * Total length of the pieces
+		 * @return
+		 */
+		public int getLength() {
+			return chunk.getInt(base + LENGTH);
+		}
+
+		public int getPieceCount() {
+			return chunk.getInt(base + COUNT);
+		}
+
+		public int getIndex() {
+			return chunk.getInt(base + INDEX);
+		}
+
+		public int getOrigin() {
+			return chunk.getInt(base + ORIGIN);
+		}
+
+		/**
+		 * Word w of the bitset
+		 * @param w
+		 * @return
+		 */
+		public long getWord(int w) {
+			return chunk.getLong(base + HEADER_BYTES + 8 * w);
+		}
+
+		/**
+		 * True if the column holds piece i of the store
+		 * @param i
+		 * @return
+		 */
+		public boolean contains(int i) {
+			return (getWord(i >>> 6) & (1L << i)) != 0;
+		}
+
+		/**
+		 * The first piece of the column at position from or later, or -1
+		 * @param from
+		 * @return
+		 */
+		public int nextPiece(int from) {
+			int w = from >>> 6;
+			if (w >= words) {
+				return -1;
+			}
+			long word = getWord(w) & (-1L << from);
+			while (true) {
+				if (word != 0) {
+					return (w << 6) + Long.numberOfTrailingZeros(word);
+				}
+				w++;
+				if (w == words) {
+					return -1;
+				}
+				word = getWord(w);
+			}
+		}
+
+		/**
+		 * Sum of the values of the pieces of the column, such as the duals
+		 * @param values per piece of the store
+		 * @return
+		 */
+		public double sum(double[] values) {
+			double result = 0;
+			for (int w = 0; w < words; w++) {
+				long word = getWord(w);
+				while (word != 0) {
+					result = result + values[(w << 6) + Long.numberOfTrailingZeros(word)];
+					word = word & (word - 1);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Makes a Pattern of the column
+		 * @return
+		 */
+		public Pattern toPattern() {
+			List<Piece> result = new ArrayList<Piece>(getPieceCount());
+			for (int i = nextPiece(0); i >= 0; i = nextPiece(i + 1)) {
+				result.add(pieces.get(i));
+			}
+			return new Pattern(getIndex(), result);
+		}
+	}
+}
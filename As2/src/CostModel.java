@@ -0,0 +1,98 @@
+import java.util.List;
+
+/**
+ * The costs of a cutting plan: a cost per rod, a cost per unit of waste and a cost per saw setup, which
+ * is paid once for every distinct pattern. The default only counts rods.
+ *
+ * Every piece is cut once, so the waste of a plan is rods * rodLength minus the total length of the
+ * order: a constant plus wasteCost * rodLength per rod. The models therefore charge every column the same
+ * getColumnCost, and minimize the waste by minimizing the rods. Charging the waste of each pattern
+ * instead would only penalise pieces that a column covers more than once under the >= rows of the master,
+ * which is no waste of the plan. The real waste is priced by cost.
+ * Setups are not linear: Model2 adds a var per distinct pattern for them, and the PatternReducer
+ * merges patterns after the solve.
+ */
+public class CostModel {
+
+	/**
+	 * Only the number of rods
+	 */
+	public static final CostModel RODS = new CostModel(1, 0, 0);
+
+	private final double rodCost;
+	private final double wasteCost;
+	private final double setupCost;
+
+	/**
+	 * Constructor
+	 * @param rodCost per rod, positive
+	 * @param wasteCost per unit of length that is not used
+	 * @param setupCost per distinct pattern
+	 */
+	public CostModel(double rodCost, double wasteCost, double setupCost) {
+		if (rodCost <= 0 || wasteCost < 0 || setupCost < 0) {
+			throw new IllegalArgumentException("Costs must be positive");
+		}
+		this.rodCost = rodCost;
+		this.wasteCost = wasteCost;
+		this.setupCost = setupCost;
+	}
+
+	// getters
+	public double getRodCost() {
+		return rodCost;
+	}
+
+	public double getWasteCost() {
+		return wasteCost;
+	}
+
+	public double getSetupCost() {
+		return setupCost;
+	}
+
+	/**
+	 * True if setups are free, so the objective of the models is the number of rods times getColumnCost
+	 * @return
+	 */
+	public boolean isRodsOnly() {
+		return setupCost == 0;
+	}
+
+	/**
+	 * What the models charge for a column: the rod, and the waste it adds to the plan up to a constant
+	 * @param rodLength
+	 * @return rodCost + wasteCost * rodLength
+	 */
+	public double getColumnCost(int rodLength) {
+		return rodCost + wasteCost * rodLength;
+	}
+
+	/**
+	 * Cost of cutting a pattern once, without setup
+	 * @param pattern
+	 * @param rodLength
+	 * @return
+	 */
+	public double patternCost(Pattern pattern, int rodLength) {
+		return rodCost + wasteCost * pattern.waste(rodLength);
+	}
+
+	/**
+	 * Total cost of a plan with one pattern per rod; every distinct length multiset is one setup
+	 * @param rods
+	 * @param rodLength
+	 * @return
+	 */
+	public double cost(List<Pattern> rods, int rodLength) {
+		double result = setupCost * PatternReducer.setups(rods);
+		for (Pattern p : rods) {
+			result = result + patternCost(p, rodLength);
+		}
+		return result;
+	}
+
+	public String toString() {
+		return "rod " + rodCost + ", waste " + wasteCost + ", setup " + setupCost;
+	}
+}
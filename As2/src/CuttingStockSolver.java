@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ilog.concert.IloException;
+
+/**
+ * Anytime solver for one Cutting Stock order. It runs the stages from cheap to expensive and stops
+ * as soon as the options say so; the best solution found by any stage is returned:
+ * 0. the reductions of the Preprocessor, with the combinatorial LowerBounds; the other stages only get
+ *    the residual pieces
+ * 1. first fit decreasing: often matches the bound already, and then no model is built
+ * 2. column generation (ModelCG), which improves the bound and rounds the LP solutions
+ * 3. an exact engine: price-and-branch, the integer model (Model2) over all generated columns, or the
+ *    arc-flow model (ArcFlowModel), which needs no columns and proves its bound for the whole instance
+ * Column generation and price-and-branch minimize the CostModel of the options; the arc-flow model only
+ * counts rods, so AUTO does not use it when setups cost. Finally, when setups cost, the PatternReducer
+ * merges patterns of the solution to save saw setups.
+ */
+public class CuttingStockSolver {
+
+	private static final int MAX_CG_ITERATIONS = 100000;
+	// AUTO uses the arc-flow model while distinct lengths * rod length stays below this
+	private static final long MAX_ARC_FLOW_SIZE = 2000000;
+
+	/**
+	 * The model of the last stage
+	 */
+	public enum Engine {
+		PRICE_AND_BRANCH, ARC_FLOW, AUTO
+	}
+
+	/**
+	 * Solve the order within the limits of the options
+	 * @param pieces
+	 * @param rodLength
+	 * @param options
+	 * @param listener receives every improvement of the solution or the bound
+	 * @return the best known solution
+	 * @throws IloException
+	 */
+	public static SolveResult<Pattern> solve(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener) throws IloException {
+		return solve(pieces, rodLength, options, listener, Engine.AUTO);
+	}
+
+	/**
+	 * Solve the order within the limits of the options, with the given model for the last stage
+	 * @param pieces
+	 * @param rodLength
+	 * @param options
+	 * @param listener
+	 * @param engine
+	 * @return
+	 * @throws IloException
+	 */
+	public static SolveResult<Pattern> solve(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener, Engine engine) throws IloException {
+		return solve(pieces, rodLength, options, listener, engine, new ArrayList<Pattern>());
+	}
+
+	/**
+	 * Solve the order, using the cache: a cached solution of the same order is returned at once, and the
+	 * columns of a cached order that differs in a few pieces are used as a warm start for column generation.
+	 * Completed solves are added to the cache. The cache counts rods, so with another cost model in the
+	 * options it is not used.
+	 * @param pieces
+	 * @param rodLength
+	 * @param options
+	 * @param listener
+	 * @param cache
+	 * @return
+	 * @throws IloException
+	 */
+	public static SolveResult<Pattern> solve(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener, SolutionCache cache) throws IloException {
+		if (!options.getCostModel().isRodsOnly()) {
+			return solve(pieces, rodLength, options, listener, Engine.AUTO);
+		}
+		SolveResult<Pattern> cached = cache.get(pieces, rodLength);
+		if (cached != null) {
+			listener.improvedSolution(cached.getObjective(), cached.getPatterns());
+			listener.improvedBound(cached.getBound());
+			return cached;
+		}
+		List<Pattern> columns = cache.seedColumns(pieces, rodLength, Math.max(2, pieces.size() / 20));
+		SolveResult<Pattern> result = solve(pieces, rodLength, options, listener, Engine.AUTO, columns);
+		cache.put(pieces, rodLength, result, columns);
+		return result;
+	}
+
+	/**
+	 * Solve the order, with the given columns as extra starting columns for column generation.
+	 * On return the list holds all columns that column generation ended with.
+	 */
+	private static SolveResult<Pattern> solve(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener, Engine engine, List<Pattern> columns) throws IloException {
+		SolveResult<Pattern> result = solveStages(pieces, rodLength, options, listener, engine, columns);
+		if (result.getStatus() == SolveResult.Status.NO_SOLUTION || options.getCostModel().getSetupCost() == 0) {
+			return result;
+		}
+		// fewer distinct patterns, with at most as many rods. A plan with as many rods is still cheaper
+		PatternReducer.Plan plan = PatternReducer.reduce(result.getPatterns(), pieces, rodLength, options);
+		List<Pattern> rods = plan.getRods();
+		if (!rods.equals(result.getPatterns())) {
+			listener.improvedSolution(rods.size(), rods);
+		}
+		return SolveResult.of(rods.size(), result.getBound(), rods, options, result.getStatus());
+	}
+
+	private static SolveResult<Pattern> solveStages(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener, Engine engine, List<Pattern> columns) throws IloException {
+		options.start();
+		CostModel costs = options.getCostModel();
+
+		// stage 0: reduction. The next stages only see the residual pieces; Progress adds the fixed rods
+		Preprocessor.Reduction reduction = Preprocessor.reduce(pieces, rodLength);
+		Progress progress = new Progress(listener, reduction.getFixed());
+		pieces = reduction.getResidual();
+		progress.improvedBound(reduction.getLowerBound() - reduction.getFixed().size());
+		if (reduction.isSolved()) {
+			progress.improvedSolution(0, new ArrayList<Pattern>());
+			columns.clear();
+			return progress.result(options, SolveResult.Status.OPTIMAL);
+		}
+		// seeded columns may contain pieces that are fixed now
+		Set<Piece> residual = Collections.newSetFromMap(new IdentityHashMap<Piece, Boolean>());
+		residual.addAll(pieces);
+		for (Iterator<Pattern> it = columns.iterator(); it.hasNext();) {
+			if (!residual.containsAll(it.next().getPieces())) {
+				it.remove();
+			}
+		}
+
+		// stage 1: first fit decreasing
+		List<Pattern> initial = Heuristics.firstFitDecreasing(pieces, rodLength);
+		progress.improvedSolution(initial.size(), initial);
+		columns.addAll(initial);
+		// seeded columns and first fit decreasing can give the same pattern
+		Set<Pattern> unique = new LinkedHashSet<Pattern>(columns);
+		columns.clear();
+		columns.addAll(unique);
+		if (progress.isDone(options)) {
+			return progress.result(options, SolveResult.Status.OPTIMAL);
+		}
+		// the more expensive L3 bound, still without a model
+		progress.improvedBound(LowerBounds.l3(pieces, rodLength));
+		if (progress.isDone(options)) {
+			return progress.result(options, SolveResult.Status.OPTIMAL);
+		}
+
+		// stage 2: column generation on a copy of the pieces (ModelCG owns its list)
+		// the columns are also kept in a store outside the heap, which the MIP reads
+		ColumnStore pool = new ColumnStore(pieces);
+		for (Pattern p : columns) {
+			pool.add(p, ColumnStore.ORIGIN_INPUT);
+		}
+		ModelCG cg = new ModelCG(columns, new ArrayList<Piece>(pieces), rodLength, costs);
+		cg.setColumnPool(pool);
+		SolveResult<Pattern> lp;
+		try {
+			lp = cg.solveLPColGen(MAX_CG_ITERATIONS, options, progress);
+		} finally {
+			cg.end();
+		}
+		if (progress.isDone(options) || lp.getStatus() == SolveResult.Status.NO_SOLUTION) {
+			return progress.result(options, lp.getStatus());
+		}
+
+		if (engine == Engine.ARC_FLOW || (engine == Engine.AUTO && costs.isRodsOnly() && arcFlowSize(pieces, rodLength) <= MAX_ARC_FLOW_SIZE)) {
+			// stage 3: arc-flow. Its bound holds for the instance
+			ArcFlowModel arcFlow = new ArcFlowModel(pieces, rodLength);
+			SolveResult<Pattern> ip;
+			try {
+				ip = arcFlow.solve(options, progress);
+			} finally {
+				arcFlow.end();
+			}
+			if (ip.getStatus() != SolveResult.Status.NO_SOLUTION) {
+				progress.improvedSolution(ip.getObjective(), ip.getPatterns());
+				progress.improvedBound(ip.getBound());
+			}
+			return progress.result(options, ip.getStatus());
+		}
+
+		// stage 3: price-and-branch over the generated columns. The bound of this MIP only holds for the
+		// restricted set of columns, so only its solutions are used
+		Model2 mip = new Model2(pool, rodLength, costs);
+		SolveResult<Pattern> ip;
+		try {
+			ip = mip.solve(options, progress.solutionsOnly());
+		} finally {
+			mip.end();
+		}
+		progress.improvedSolution(ip.getObjective(), ip.getPatterns());
+		return progress.result(options, lp.getStatus());
+	}
+
+	/**
+	 * Upper limit on the number of arcs of the arc-flow graph
+	 */
+	private static long arcFlowSize(List<Piece> pieces, int rodLength) {
+		int[] lengths = LowerBounds.sortedLengths(pieces);
+		int distinct = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			if (i == 0 || lengths[i] != lengths[i - 1]) {
+				distinct++;
+			}
+		}
+		return (long) distinct * rodLength;
+	}
+
+	/**
+	 * Keeps the best solution and bound over all stages, and only passes improvements on
+	 */
+	private static class Progress implements SolveListener<Pattern> {
+		private final SolveListener<Pattern> listener;
+		private final List<Pattern> fixed;
+		private double objective = Double.POSITIVE_INFINITY;
+		private List<Pattern> patterns;
+		private double bound = Double.NEGATIVE_INFINITY;
+
+		/**
+		 * Constructor
+		 * @param listener
+		 * @param fixed rods fixed by the reduction: the stages report values for the residual instance only
+		 */
+		Progress(SolveListener<Pattern> listener, List<Pattern> fixed) {
+			this.listener = listener;
+			this.fixed = fixed;
+		}
+
+		@Override
+		public void improvedSolution(double newObjective, List<Pattern> newPatterns) {
+			double total = newObjective + fixed.size();
+			if (total < objective - 1e-9) {
+				objective = total;
+				patterns = new ArrayList<Pattern>(fixed.size() + newPatterns.size());
+				patterns.addAll(fixed);
+				patterns.addAll(newPatterns);
+				listener.improvedSolution(objective, patterns);
+			}
+		}
+
+		@Override
+		public void improvedBound(double newBound) {
+			double total = newBound + fixed.size();
+			if (total > bound + 1e-9) {
+				bound = total;
+				listener.improvedBound(bound);
+			}
+		}
+
+		SolveListener<Pattern> solutionsOnly() {
+			return new SolveListener<Pattern>() {
+				@Override
+				public void improvedSolution(double newObjective, List<Pattern> newPatterns) {
+					Progress.this.improvedSolution(newObjective, newPatterns);
+				}
+
+				@Override
+				public void improvedBound(double newBound) {
+				}
+			};
+		}
+
+		boolean isDone(SolveOptions options) {
+			SolveResult<Pattern> current = result(options, SolveResult.Status.OPTIMAL);
+			return options.isStopped() || current.getGap() <= options.getTargetGap();
+		}
+
+		SolveResult<Pattern> result(SolveOptions options, SolveResult.Status limitStatus) {
+			return SolveResult.of(objective, bound, patterns, options, limitStatus);
+		}
+	}
+}
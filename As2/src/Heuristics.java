@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Construction heuristics for Cutting Stock orders. They need no model, so the solvers use them for a
+ * first solution and for the starting columns of column generation.
+ */
+public final class Heuristics {
+
+	private Heuristics() {
+	}
+
+	/**
+	 * First fit decreasing: every piece, longest first, is put in the first pattern where it still fits.
+	 * The patterns are numbered from 1.
+	 * @param pieces
+	 * @param rodLength
+	 * @return
+	 */
+	public static List<Pattern> firstFitDecreasing(List<Piece> pieces, int rodLength) {
+		List<Piece> sorted = new ArrayList<Piece>(pieces);
+		Collections.sort(sorted, new Comparator<Piece>() {
+			@Override
+			public int compare(Piece p1, Piece p2) {
+				return p2.getLength() - p1.getLength();
+			}
+		});
+		List<List<Piece>> bins = new ArrayList<List<Piece>>();
+		List<Integer> used = new ArrayList<Integer>();
+		for (Piece p : sorted) {
+			int i = 0;
+			while (i < bins.size() && used.get(i) + p.getLength() > rodLength) {
+				i++;
+			}
+			if (i == bins.size()) {
+				bins.add(new ArrayList<Piece>());
+				used.add(0);
+			}
+			bins.get(i).add(p);
+			used.set(i, used.get(i) + p.getLength());
+		}
+		List<Pattern> result = new ArrayList<Pattern>();
+		for (int i = 0; i < bins.size(); i++) {
+			result.add(new Pattern(i + 1, bins.get(i)));
+		}
+		return result;
+	}
+}
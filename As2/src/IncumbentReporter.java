@@ -0,0 +1,68 @@
+import java.util.List;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+/**
+ * CPLEX incumbent callback that passes improving solutions and bounds to a SolveListener,
+ * and stops the search when the options are cancelled or out of time.
+ * Subclasses turn the values of the incumbent into patterns.
+ */
+abstract class IncumbentReporter extends IloCplex.IncumbentCallback {
+
+	private final SolveOptions options;
+	private final SolveListener<Pattern> listener;
+	// the cost of a rod in the objective, 0 if the objective is not the number of rods times it
+	private final double rodCost;
+	private double best = Double.POSITIVE_INFINITY;
+	private double bound = Double.NEGATIVE_INFINITY;
+
+	IncumbentReporter(SolveOptions options, SolveListener<Pattern> listener) {
+		this(options, listener, 1);
+	}
+
+	/**
+	 * Constructor
+	 * @param options
+	 * @param listener
+	 * @param rodCost the cost of a rod in the objective of the model, or 0 if the objective is not the number
+	 *        of rods times it: the listener then gets the number of patterns of the incumbent, and no bounds
+	 */
+	IncumbentReporter(SolveOptions options, SolveListener<Pattern> listener, double rodCost) {
+		this.options = options;
+		this.listener = listener;
+		this.rodCost = rodCost;
+	}
+
+	/**
+	 * Reads the patterns of the incumbent that is being reported
+	 * @return
+	 * @throws IloException
+	 */
+	protected abstract List<Pattern> extract() throws IloException;
+
+	@Override
+	protected void main() throws IloException {
+		if (rodCost == 0) {
+			List<Pattern> patterns = extract();
+			if (patterns.size() < best) {
+				best = patterns.size();
+				listener.improvedSolution(best, patterns);
+			}
+		} else {
+			double objective = getObjValue() / rodCost;
+			if (objective < best - 1e-9) {
+				best = objective;
+				listener.improvedSolution(objective, extract());
+			}
+		}
+		double newBound = getBestObjValue() / rodCost;
+		if (rodCost > 0 && newBound > bound + 1e-9) {
+			bound = newBound;
+			listener.improvedBound(newBound);
+		}
+		if (options.isStopped()) {
+			abort();
+		}
+	}
+}
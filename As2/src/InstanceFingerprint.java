@@ -0,0 +1,128 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical description of a Cutting Stock instance: the rod length and the sorted piece lengths.
+ * Two orders with the same multiset of lengths have equal fingerprints, whatever the indices or the
+ * order of their pieces, so one solution serves both (see remap).
+ */
+public final class InstanceFingerprint {
+
+	private final int rodLength;
+	private final int[] lengths;		// sorted ascending
+	private final int hash;
+
+	public InstanceFingerprint(List<Piece> pieces, int rodLength) {
+		this.rodLength = rodLength;
+		this.lengths = new int[pieces.size()];
+		for (int i = 0; i < lengths.length; i++) {
+			lengths[i] = pieces.get(i).getLength();
+		}
+		Arrays.sort(lengths);
+		this.hash = 31 * rodLength + Arrays.hashCode(lengths);
+	}
+
+	// getters
+	public int getRodLength() {
+		return rodLength;
+	}
+
+	public int size() {
+		return lengths.length;
+	}
+
+	/**
+	 * The sorted lengths. The array is shared: do not change it.
+	 * @return
+	 */
+	int[] lengths() {
+		return lengths;
+	}
+
+	/**
+	 * A stable key for the instance, usable as a file name: SHA-256 of the canonical form, in hex.
+	 * @return
+	 */
+	public String getKey() {
+		StringBuilder canonical = new StringBuilder(lengths.length * 4 + 8);
+		canonical.append(rodLength).append(':');
+		for (int length : lengths) {
+			canonical.append(length).append(',');
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes(StandardCharsets.US_ASCII));
+			StringBuilder hex = new StringBuilder(64);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Translates patterns over the pieces of one instance to the pieces of another instance with the
+	 * same lengths: every piece is replaced by an unused piece of the same length. Pieces that are cut
+	 * more often than needed (the models only require each piece at least once) are left out.
+	 * @param patterns
+	 * @param target
+	 * @return the translated patterns, or null if target has no piece of some length
+	 */
+	public static List<Pattern> remap(List<Pattern> patterns, List<Piece> target) {
+		Map<Integer, ArrayDeque<Piece>> byLength = new HashMap<Integer, ArrayDeque<Piece>>();
+		for (Piece p : target) {
+			ArrayDeque<Piece> same = byLength.get(p.getLength());
+			if (same == null) {
+				same = new ArrayDeque<Piece>();
+				byLength.put(p.getLength(), same);
+			}
+			same.add(p);
+		}
+		List<Pattern> result = new ArrayList<Pattern>(patterns.size());
+		for (Pattern pattern : patterns) {
+			List<Piece> mapped = new ArrayList<Piece>(pattern.getPieces().size());
+			for (Piece p : pattern.getPieces()) {
+				ArrayDeque<Piece> same = byLength.get(p.getLength());
+				if (same == null) {
+					return null;
+				}
+				if (!same.isEmpty()) {
+					mapped.add(same.poll());
+				}
+			}
+			if (!mapped.isEmpty()) {
+				result.add(new Pattern(result.size() + 1, mapped));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof InstanceFingerprint)) {
+			return false;
+		}
+		InstanceFingerprint other = (InstanceFingerprint) o;
+		return hash == other.hash && rodLength == other.rodLength && Arrays.equals(lengths, other.lengths);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	public String toString() {
+		return lengths.length + " pieces, rod " + rodLength;
+	}
+}
@@ -0,0 +1,255 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator for synthetic Cutting Stock instances. The same class, settings and seed always
+ * give the same instance. Every unit of demand becomes a separate Piece, like in small.txt.
+ *
+ * The length distributions follow the classic benchmark classes:
+ * FALKENAUER_U: uniform lengths in [20,100] for a rod of 150.
+ * FALKENAUER_T: triplets that fill a rod exactly, so the optimum is (number of pieces)/3. The three
+ * lengths of a triplet get the same demand, so this also holds for a maximum demand above 1.
+ * HARD28: wide uniform lengths in [1, 0.8*rod], the range of the hard28 set.
+ * GAU: few item types with lengths in [0.1*rod, 0.7*rod] and larger demands.
+ */
+public class InstanceGenerator {
+
+	public enum InstanceClass {
+		FALKENAUER_U(150, 1),
+		FALKENAUER_T(1000, 1),
+		HARD28(1000, 1),
+		GAU(10000, 20);
+
+		private final int defaultRodLength;
+		private final int defaultMaxDemand;
+
+		InstanceClass(int defaultRodLength, int defaultMaxDemand) {
+			this.defaultRodLength = defaultRodLength;
+			this.defaultMaxDemand = defaultMaxDemand;
+		}
+	}
+
+	private final InstanceClass instanceClass;
+	private final long seed;
+	private int rodLength;
+	private int maxDemand;
+	private int itemTypes;
+
+	/**
+	 * Constructor, uses the default rod length and demand of the class
+	 * @param instanceClass
+	 * @param itemTypes number of distinct lengths to draw (for FALKENAUER_T it is rounded up to a multiple of 3)
+	 * @param seed
+	 */
+	public InstanceGenerator(InstanceClass instanceClass, int itemTypes, long seed) {
+		this.instanceClass = instanceClass;
+		this.itemTypes = itemTypes;
+		this.seed = seed;
+		this.rodLength = instanceClass.defaultRodLength;
+		this.maxDemand = instanceClass.defaultMaxDemand;
+	}
+
+	// getters
+	public int getRodLength() {
+		return this.rodLength;
+	}
+
+	public InstanceClass getInstanceClass() {
+		return this.instanceClass;
+	}
+
+	// setters
+	public void setRodLength(int rodLength) {
+		this.rodLength = rodLength;
+	}
+
+	/**
+	 * The demand of every item type is drawn uniformly from [1,maxDemand]. 1 gives one piece per type.
+	 * @param maxDemand
+	 */
+	public void setMaxDemand(int maxDemand) {
+		this.maxDemand = maxDemand;
+	}
+
+	/**
+	 * Generates the instance in memory.
+	 * @return
+	 */
+	public List<Piece> generate() {
+		final List<Piece> result = new ArrayList<Piece>();
+		generate(new PieceSink() {
+			@Override
+			public void accept(int index, int length) {
+				result.add(new Piece(index, length));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Streams the instance in the format of small.txt, one piece per line. Nothing is kept in memory,
+	 * so this works for instances that do not fit on the heap.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void stream(final Writer out) throws IOException {
+		final StringBuilder line = new StringBuilder();
+		try {
+			generate(new PieceSink() {
+				@Override
+				public void accept(int index, int length) {
+					line.setLength(0);
+					line.append(index).append(' ').append(length).append('\n');
+					try {
+						out.write(line.toString());
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the instance to a file in the format of small.txt
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writePieces(File file) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			stream(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes patterns in the format of large_patterns.txt: one row per pattern, with a 1 for every piece in it.
+	 * @param file
+	 * @param patterns
+	 * @param pieces the pieces in the order of the columns
+	 * @throws IOException
+	 */
+	public static void writePatterns(File file, List<Pattern> patterns, List<Piece> pieces) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			StringBuilder line = new StringBuilder();
+			for (Pattern pattern : patterns) {
+				line.setLength(0);
+				for (int i = 0; i < pieces.size(); i++) {
+					if (i > 0) {
+						line.append(' ');
+					}
+					line.append(pattern.contains(pieces.get(i)) ? '1' : '0');
+				}
+				line.append('\n');
+				out.write(line.toString());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Draws the item types and passes every unit of demand to the sink.
+	 */
+	private void generate(PieceSink sink) {
+		Random random = new Random(seed);
+		int index = 0;
+		int types = 0;
+		while (types < itemTypes) {
+			int[] lengths;
+			if (instanceClass == InstanceClass.FALKENAUER_T) {
+				lengths = nextTriplet(random);
+			} else {
+				lengths = new int[] { nextLength(random) };
+			}
+			// one demand for all lengths of a triplet, so the triplets still fill whole rods
+			int demand = 1 + random.nextInt(maxDemand);
+			for (int length : lengths) {
+				for (int d = 0; d < demand; d++) {
+					index++;
+					sink.accept(index, length);
+				}
+				types++;
+			}
+		}
+	}
+
+	private int nextLength(Random random) {
+		switch (instanceClass) {
+		case FALKENAUER_U:
+			return uniform(random, (int) Math.round(rodLength * 20.0 / 150), (int) Math.round(rodLength * 100.0 / 150));
+		case HARD28:
+			return uniform(random, 1, (int) (rodLength * 0.8));
+		case GAU:
+			return uniform(random, (int) (rodLength * 0.1), (int) (rodLength * 0.7));
+		default:
+			throw new IllegalStateException("No single length distribution for " + instanceClass);
+		}
+	}
+
+	/**
+	 * Three lengths that sum to the rod length exactly, as in Falkenauer's triplet instances
+	 * (first piece in [0.38,0.49] of the rod, second in [0.25, half of what is left]).
+	 */
+	private int[] nextTriplet(Random random) {
+		int first = uniform(random, (int) (rodLength * 0.38), (int) (rodLength * 0.49));
+		int second = uniform(random, (int) (rodLength * 0.25), (rodLength - first) / 2);
+		int third = rodLength - first - second;
+		return new int[] { first, second, third };
+	}
+
+	private static int uniform(Random random, int min, int max) {
+		if (max <= min) {
+			return Math.max(1, min);
+		}
+		return Math.max(1, min + random.nextInt(max - min + 1));
+	}
+
+	private interface PieceSink {
+		void accept(int index, int length);
+	}
+
+	/**
+	 * Usage: InstanceGenerator class itemTypes seed [file] [rodLength] [maxDemand]
+	 * Without a file (or with -) the instance is streamed to standard out.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: InstanceGenerator FALKENAUER_U|FALKENAUER_T|HARD28|GAU itemTypes seed [file|-] [rodLength] [maxDemand]");
+			return;
+		}
+		InstanceGenerator generator = new InstanceGenerator(InstanceClass.valueOf(args[0]), Integer.parseInt(args[1]), Long.parseLong(args[2]));
+		if (args.length > 4) {
+			generator.setRodLength(Integer.parseInt(args[4]));
+		}
+		if (args.length > 5) {
+			generator.setMaxDemand(Integer.parseInt(args[5]));
+		}
+		if (args.length < 4 || args[3].equals("-")) {
+			generator.stream(new BufferedWriter(new OutputStreamWriter(System.out)));
+		} else {
+			File file = new File(args[3]);
+			generator.writePieces(file);
+			// starting columns for column generation, in the format of large_patterns.txt
+			List<Piece> pieces = Main.readFile(file);
+			File patternFile = new File(file.getPath().replace(".txt", "") + "_patterns.txt");
+			writePatterns(patternFile, Heuristics.firstFitDecreasing(pieces, generator.getRodLength()), pieces);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * A rectangular item for two-dimensional cutting, with the number of copies that is ordered.
+ * Items are not rotated: the height of an item is its height in the strip.
+ */
+public class Item2D {
+
+	private final int INDEX;
+	private final int WIDTH;
+	private final int HEIGHT;
+	private final int DEMAND;
+
+	/**
+	 * Constructor
+	 * @param index
+	 * @param width
+	 * @param height
+	 * @param demand number of copies
+	 */
+	public Item2D(int index, int width, int height, int demand) {
+		this.INDEX = index;
+		this.WIDTH = width;
+		this.HEIGHT = height;
+		this.DEMAND = demand;
+	}
+
+	// getters
+	public int getIndex() {
+		return this.INDEX;
+	}
+
+	public int getWidth() {
+		return this.WIDTH;
+	}
+
+	public int getHeight() {
+		return this.HEIGHT;
+	}
+
+	public int getDemand() {
+		return this.DEMAND;
+	}
+
+	// toString
+	public String toString() {
+		return "(" + INDEX + "," + WIDTH + "x" + HEIGHT + "," + DEMAND + ")";
+	}
+}
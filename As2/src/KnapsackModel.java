@@ -1,10 +1,8 @@
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import ilog.concert.IloException;
-import ilog.concert.IloNumExpr;
+import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumVar;
 import ilog.cplex.IloCplex;
 import ilog.cplex.IloCplex.UnknownObjectException;
@@ -12,21 +10,22 @@ import ilog.cplex.IloCplex.UnknownObjectException;
 public class KnapsackModel 
 {
 	private final int ROD_LENGTH;
-	private Map<Piece,Double> duals;
+	// indexed by the position of the piece in pieces
+	private double[] duals;
 	final List<Piece> pieces;
 	private int nrPatterns;
 	
 	private IloCplex cplex;
-	private Map<Piece,IloNumVar> a;
+	private IloNumVar[] a;
 	
-	public KnapsackModel(int ROD_LENGTH, Map<Piece, Double> duals, List<Piece> pieces, int nrPatterns) throws IloException {
+	public KnapsackModel(int ROD_LENGTH, double[] duals, List<Piece> pieces, int nrPatterns) throws IloException {
 		this.ROD_LENGTH = ROD_LENGTH;
 		this.duals = duals;
 		this.pieces = pieces;
 		this.nrPatterns = nrPatterns;
 		
 		cplex = new IloCplex();
-		a = new HashMap<Piece,IloNumVar>();
+		a = new IloNumVar[pieces.size()];
 		
 		addVariables();
 		addObjective();
@@ -36,18 +35,17 @@ public class KnapsackModel
 	}
 
 	private void addVariables() throws IloException {
-		for(Piece p: pieces)
+		for(int i = 0; i < a.length; i++)
 		{
-			IloNumVar aVar = cplex.boolVar(p.toString());
-			a.put(p, aVar);
+			a[i] = cplex.boolVar(pieces.get(i).toString());
 		}
 	}
 
 	private void addObjective() throws IloException {
-		IloNumExpr obj = cplex.constant(0);
-		for(Piece p: pieces)
+		IloLinearNumExpr obj = cplex.linearNumExpr();
+		for(int i = 0; i < a.length; i++)
 		{
-			obj = cplex.sum(obj,cplex.prod(a.get(p), duals.get(p)));
+			obj.addTerm(duals[i], a[i]);
 		}
 		cplex.addMaximize(obj);
 	}
@@ -56,10 +54,10 @@ public class KnapsackModel
 	
 	
 	private void addWeightConstraint() throws IloException {
-		IloNumExpr lhs = cplex.constant(0);
-		for(Piece p: pieces)
+		IloLinearNumExpr lhs = cplex.linearNumExpr();
+		for(int i = 0; i < a.length; i++)
 		{
-			lhs = cplex.sum(lhs,cplex.prod(a.get(p),p.getLength()));
+			lhs.addTerm(pieces.get(i).getLength(), a[i]);
 		}
 		cplex.addLe(lhs, ROD_LENGTH);
 	}
@@ -72,10 +70,10 @@ public class KnapsackModel
 	
 	public Pattern getPattern() throws UnknownObjectException, IloException {
 		List<Piece> patternPieces = new ArrayList<Piece>();
-		for (Piece p : pieces) {
-			double val = cplex.getValue(a.get(p));
-			if (val > 0.01) {
-				patternPieces.add(p);
+		double[] values = cplex.getValues(a);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] > 0.01) {
+				patternPieces.add(pieces.get(i));
 			}
 		}
 		return new Pattern(nrPatterns + 1,patternPieces);
@@ -85,5 +83,10 @@ public class KnapsackModel
 		return cplex.getObjValue();
 	}
 	
-	
+	/**
+	 * Releases the native CPLEX resources. The model cannot be used afterwards.
+	 */
+	public void end() {
+		cplex.end();
+	}
 }
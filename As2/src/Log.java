@@ -0,0 +1,229 @@
+import java.io.PrintStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Small asynchronous logger. Messages below the current level are dropped before anything is formatted.
+ * Enabled messages are put on a queue and formatted and printed by a background thread, so the solver
+ * threads never wait for the console, nor for each other: when the queue is full a message is dropped and
+ * counted, and the writer reports the number of dropped messages. A format uses {} as placeholder for the
+ * next argument.
+ * In hot loops guard the call with isEnabled, so that not even the arguments are boxed.
+ * The arguments are formatted later, on the writer thread: pass immutable values, or a string or copy of
+ * anything that another thread may still change. A toString that throws costs its message, not the writer.
+ *
+ * The level is read from the system property cs.log.level (default INFO).
+ */
+public final class Log {
+
+	public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+	private static volatile Level level = readLevel();
+	private static final BlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>(1 << 16);
+	private static final AtomicLong enqueued = new AtomicLong();
+	private static final AtomicLong written = new AtomicLong();
+	private static final AtomicLong dropped = new AtomicLong();
+
+	static {
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, "log-flush"));
+	}
+
+	private Log() {
+	}
+
+	public static void setLevel(Level newLevel) {
+		level = newLevel;
+	}
+
+	public static Level getLevel() {
+		return level;
+	}
+
+	public static boolean isEnabled(Level l) {
+		return l.compareTo(level) >= 0 && l != Level.OFF;
+	}
+
+	public static boolean isDebugEnabled() {
+		return isEnabled(Level.DEBUG);
+	}
+
+	// logging methods; the fixed arity versions avoid the varargs array
+	public static void debug(String format) {
+		if (isEnabled(Level.DEBUG)) {
+			enqueue(Level.DEBUG, format, null);
+		}
+	}
+
+	public static void debug(String format, Object a1) {
+		if (isEnabled(Level.DEBUG)) {
+			enqueue(Level.DEBUG, format, new Object[] { a1 });
+		}
+	}
+
+	public static void debug(String format, Object a1, Object a2) {
+		if (isEnabled(Level.DEBUG)) {
+			enqueue(Level.DEBUG, format, new Object[] { a1, a2 });
+		}
+	}
+
+	public static void debug(String format, Object... args) {
+		if (isEnabled(Level.DEBUG)) {
+			enqueue(Level.DEBUG, format, args);
+		}
+	}
+
+	public static void info(String format) {
+		if (isEnabled(Level.INFO)) {
+			enqueue(Level.INFO, format, null);
+		}
+	}
+
+	public static void info(String format, Object a1) {
+		if (isEnabled(Level.INFO)) {
+			enqueue(Level.INFO, format, new Object[] { a1 });
+		}
+	}
+
+	public static void info(String format, Object a1, Object a2) {
+		if (isEnabled(Level.INFO)) {
+			enqueue(Level.INFO, format, new Object[] { a1, a2 });
+		}
+	}
+
+	public static void info(String format, Object... args) {
+		if (isEnabled(Level.INFO)) {
+			enqueue(Level.INFO, format, args);
+		}
+	}
+
+	public static void warn(String format, Object... args) {
+		if (isEnabled(Level.WARN)) {
+			enqueue(Level.WARN, format, args);
+		}
+	}
+
+	public static void error(String format, Object... args) {
+		if (isEnabled(Level.ERROR)) {
+			enqueue(Level.ERROR, format, args);
+		}
+	}
+
+	/**
+	 * Number of messages dropped because the queue was full
+	 * @return
+	 */
+	public static long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Blocks until every message logged before this call has been printed, or dropped.
+	 */
+	public static void flush() {
+		long target = enqueued.get();
+		while (written.get() < target) {
+			LockSupport.parkNanos(1000000);
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+		}
+	}
+
+	private static void enqueue(Level l, String format, Object[] args) {
+		if (queue.offer(new Entry(l, format, args))) {
+			enqueued.incrementAndGet();
+		} else {
+			dropped.incrementAndGet();
+		}
+	}
+
+	private static void writeLoop() {
+		StringBuilder sb = new StringBuilder(256);
+		long reported = 0;
+		while (true) {
+			Entry e;
+			try {
+				e = queue.take();
+			} catch (InterruptedException ex) {
+				return;
+			}
+			int count = 0;
+			PrintStream out = System.out;
+			while (e != null) {
+				sb.setLength(0);
+				try {
+					e.format(sb);
+				} catch (Throwable t) {
+					sb.setLength(0);
+					sb.append(e.format).append(" (cannot format an argument: ").append(t.getClass().getName()).append(')');
+				}
+				(e.level.compareTo(Level.WARN) >= 0 ? System.err : out).println(sb);
+				count++;
+				e = queue.poll();
+			}
+			long lost = dropped.get();
+			if (lost > reported) {
+				System.err.println("log: " + (lost - reported) + " messages dropped, the queue was full");
+				reported = lost;
+			}
+			out.flush();
+			written.addAndGet(count);
+		}
+	}
+
+	private static Level readLevel() {
+		String value = System.getProperty("cs.log.level");
+		if (value == null) {
+			return Level.INFO;
+		}
+		try {
+			return Level.valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return Level.INFO;
+		}
+	}
+
+	/**
+	 * A message waiting to be printed
+	 */
+	private static final class Entry {
+		private final Level level;
+		private final String format;
+		private final Object[] args;
+
+		Entry(Level level, String format, Object[] args) {
+			this.level = level;
+			this.format = format;
+			this.args = args;
+		}
+
+		void format(StringBuilder sb) {
+			int arg = 0;
+			int start = 0;
+			int i = format.indexOf("{}");
+			while (i >= 0 && args != null && arg < args.length) {
+				sb.append(format, start, i);
+				sb.append(args[arg]);
+				arg++;
+				start = i + 2;
+				i = format.indexOf("{}", start);
+			}
+			sb.append(format, start, format.length());
+		}
+	}
+}
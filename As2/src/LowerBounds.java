@@ -0,0 +1,213 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Combinatorial lower bounds on the number of rods, computed without building a model.
+ * All bounds work on the piece lengths sorted increasingly, as an int array.
+ * L1: total length / rod length, rounded up
+ * L2: Martello and Toth, over all thresholds in O(n log n)
+ * L3: Martello and Toth, L2 after the reductions of the Preprocessor, with the smallest piece removed
+ *     whenever no reduction applies (limited number of rounds). The rounds reduce the lengths array
+ *     itself, so each takes O(n log n) like the other bounds
+ * DFF: dual feasible functions of Fekete and Schepers, u(k) for k = 1..MAX_K, and f0 for every threshold
+ */
+public class LowerBounds {
+
+	private static final int MAX_K = 10;
+	private static final int MAX_L3_ROUNDS = 20;
+
+	/**
+	 * The lengths of the pieces, sorted increasingly
+	 * @param pieces
+	 * @return
+	 */
+	public static int[] sortedLengths(List<Piece> pieces) {
+		int[] result = new int[pieces.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = pieces.get(i).getLength();
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * The best of L2 and the DFF bounds; cheap enough to run on every order
+	 * @param pieces
+	 * @param rodLength
+	 * @return
+	 */
+	public static int best(List<Piece> pieces, int rodLength) {
+		int[] lengths = sortedLengths(pieces);
+		return Math.max(l2(lengths, rodLength), dff(lengths, rodLength));
+	}
+
+	public static int l1(int[] lengths, int rodLength) {
+		long total = 0;
+		for (int w : lengths) {
+			total = total + w;
+		}
+		return (int) ((total + rodLength - 1) / rodLength);
+	}
+
+	/**
+	 * L2 of Martello and Toth. For a threshold a at most half the rod: pieces longer than rod - a need a
+	 * rod each, so do the pieces longer than half the rod; the room these leave for the pieces in
+	 * [a, rod/2] is limited, which gives a bound.
+	 * @param lengths sorted increasingly
+	 * @param rodLength
+	 * @return
+	 */
+	public static int l2(int[] lengths, int rodLength) {
+		int n = lengths.length;
+		long[] prefix = prefixSums(lengths);
+		int best = l1(lengths, rodLength);
+		int half = firstAbove(lengths, rodLength / 2);		// first piece longer than half the rod
+		for (int t = 0; t <= half; t++) {
+			if (t > 0 && t < n && lengths[t] == lengths[t - 1]) {
+				continue;		// same threshold as before
+			}
+			int a = t < n ? Math.min(lengths[t], rodLength / 2) : rodLength / 2;
+			int big = firstAbove(lengths, rodLength - a);		// N1: longer than rod - a
+			int countN1 = n - big;
+			int countN2 = big - half;							// N2: in (rod/2, rod - a]
+			long lengthN2 = prefix[big] - prefix[half];
+			int low = firstAbove(lengths, a - 1);
+			long lengthN3 = prefix[half] - prefix[low];			// N3: in [a, rod/2]
+			long room = (long) countN2 * rodLength - lengthN2;
+			long extra = lengthN3 - room;
+			int value = countN1 + countN2 + (extra > 0 ? (int) ((extra + rodLength - 1) / rodLength) : 0);
+			if (value > best) {
+				best = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * L3 of Martello and Toth: the reductions fix rods, L2 bounds the rest; when nothing can be reduced
+	 * the smallest piece is dropped (which can only lower the optimum) and the reductions are tried again.
+	 * @param pieces
+	 * @param rodLength
+	 * @return
+	 */
+	public static int l3(List<Piece> pieces, int rodLength) {
+		return l3(sortedLengths(pieces), rodLength);
+	}
+
+	/**
+	 * L3 on the lengths
+	 * @param lengths sorted increasingly
+	 * @param rodLength
+	 * @return
+	 */
+	public static int l3(int[] lengths, int rodLength) {
+		int n = lengths.length;
+		// the reductions work on decreasing lengths
+		int[] current = new int[n];
+		for (int i = 0; i < n; i++) {
+			current[i] = lengths[n - 1 - i];
+		}
+		int[] first = new int[n];
+		int[] second = new int[n];
+		boolean[] removed = new boolean[n];
+		int[] residual = new int[n];
+		int fixed = 0;
+		int best = 0;
+		for (int round = 0; round < MAX_L3_ROUNDS; round++) {
+			int size = current.length;
+			int rods = Preprocessor.reduce(current, rodLength, first, second);
+			fixed = fixed + rods;
+			Arrays.fill(removed, 0, size, false);
+			for (int r = 0; r < rods; r++) {
+				removed[first[r]] = true;
+				if (second[r] >= 0) {
+					removed[second[r]] = true;
+				}
+			}
+			// the residual, increasing for L2
+			int m = 0;
+			for (int i = size - 1; i >= 0; i--) {
+				if (!removed[i]) {
+					residual[m] = current[i];
+					m++;
+				}
+			}
+			best = Math.max(best, fixed + l2(Arrays.copyOf(residual, m), rodLength));
+			if (m == 0) {
+				break;
+			}
+			// drop the smallest piece, and keep the rest decreasing
+			current = new int[m - 1];
+			for (int i = 0; i < m - 1; i++) {
+				current[i] = residual[m - 1 - i];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The best bound from dual feasible functions. A DFF maps the lengths (as fractions of the rod) such
+	 * that every feasible pattern still sums to at most 1, so the rounded up sum of the mapped lengths is a bound.
+	 * @param lengths sorted increasingly
+	 * @param rodLength
+	 * @return
+	 */
+	public static int dff(int[] lengths, int rodLength) {
+		int best = 0;
+		// Fekete and Schepers: u(k)(x) = x if (k+1)x is integral, else floor((k+1)x)/k.
+		// Summed exactly in units of 1/(k*rod)
+		for (int k = 1; k <= MAX_K; k++) {
+			long total = 0;
+			for (int w : lengths) {
+				long scaled = (long) (k + 1) * w;
+				if (scaled % rodLength == 0) {
+					total = total + (long) w * k;
+				} else {
+					total = total + (scaled / rodLength) * rodLength;
+				}
+			}
+			long unit = (long) k * rodLength;
+			best = Math.max(best, (int) ((total + unit - 1) / unit));
+		}
+		// f0 with threshold a: lengths above rod - a count as a full rod, lengths below a as nothing
+		long[] prefix = prefixSums(lengths);
+		int n = lengths.length;
+		int half = firstAbove(lengths, rodLength / 2);
+		for (int t = 0; t <= half && t < n; t++) {
+			if (t > 0 && lengths[t] == lengths[t - 1]) {
+				continue;
+			}
+			int a = Math.min(lengths[t], rodLength / 2);
+			int big = firstAbove(lengths, rodLength - a);
+			int low = firstAbove(lengths, a - 1);
+			long total = (long) (n - big) * rodLength + prefix[big] - prefix[low];
+			best = Math.max(best, (int) ((total + rodLength - 1) / rodLength));
+		}
+		return best;
+	}
+
+	private static long[] prefixSums(int[] lengths) {
+		long[] prefix = new long[lengths.length + 1];
+		for (int i = 0; i < lengths.length; i++) {
+			prefix[i + 1] = prefix[i] + lengths[i];
+		}
+		return prefix;
+	}
+
+	/**
+	 * Index of the first length above value, in an increasing array
+	 */
+	static int firstAbove(int[] lengths, int value) {
+		int lo = 0;
+		int hi = lengths.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (lengths[mid] <= value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
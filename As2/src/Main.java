@@ -22,7 +22,11 @@ public class Main
 
 	public static void main(String[] args) throws IloException
 	{
-		System.out.println("Part a: ");
+		// this script reports every column generation step, unless a level is given on the command line
+		if (System.getProperty("cs.log.level") == null) {
+			Log.setLevel(Log.Level.DEBUG);
+		}
+		Log.info("Part a: ");
 		final int ROD_LENGTH = 150;
 		List<Piece> allPieces = readFile(new File("small.txt"));
 		List<Rod> rods = new ArrayList<Rod>();
@@ -35,31 +39,32 @@ public class Main
 		// solve
 		model.solve();
 		// print solution info
-		System.out.println("Objective: " + model.getObjective());
+		Log.info("Objective: {}", model.getObjective());
 		printSolutionInfo(model);		
 
+		Log.info("Lower bound without a model: {}", LowerBounds.best(allPieces, ROD_LENGTH));
 		model.solveLP();
 		// print solution info
-		System.out.println("Objective: " + model.getObjective()); //=(110+150+125+140+105+123=5)/150
+		Log.info("Objective: {}", model.getObjective()); //=(110+150+125+140+105+123=5)/150
 		printSolutionInfo(model);
 		
 		//Alternative formulation:
-		System.out.println("");
-		System.out.println("");
-		System.out.println("Part b:");
+		Log.info("");
+		Log.info("");
+		Log.info("Part b:");
 		// create all possible patterns
 		List<Pattern> patterns = createFeasiblePatterns(allPieces, ROD_LENGTH);
-		System.out.println(patterns.size());
+		Log.info("{}", patterns.size());
 		// build the model
 		Model2 model2 = new Model2(patterns, allPieces);
 		// solve
 		model2.solve();
 		// print solution info
-		System.out.println("Objective: " + model2.getObjective());
+		Log.info("Objective: {}", model2.getObjective());
 		printSolutionInfo(model2);
 		model2.solveLP();
 		// print solution info
-		System.out.println("Objective: " + model2.getObjective()); //=(110+150+125+140+105+123=5)/150
+		Log.info("Objective: {}", model2.getObjective()); //=(110+150+125+140+105+123=5)/150
 		printSolutionInfo(model2);
 		
 
@@ -70,29 +75,62 @@ public class Main
 		List<Pattern> patternsLarge = readPatterns(new File("large_patterns.txt"), piecesLarge);
 		
 		// Part c
-		System.out.println("");
-		System.out.println("");
-		System.out.println("Part c:");
-		model2 = new Model2(patternsLarge, piecesLarge);
+		Log.info("");
+		Log.info("");
+		Log.info("Part c:");
+		ColumnStore columnsLarge;
+		try {
+			// read straight into the store: the model reads the columns without Pattern objects
+			columnsLarge = ColumnStore.load(new File("large_patterns.txt"), piecesLarge);
+		} catch (IOException e) {
+			e.printStackTrace();
+			columnsLarge = new ColumnStore(piecesLarge);
+		}
+		model2 = new Model2(columnsLarge, ROD_LENGTH2, CostModel.RODS);
 		// solve the LP
 		model2.solveLP();
 		// print solution info
-		System.out.println("Objective: " + model2.getObjective());
+		Log.info("Objective: {}", model2.getObjective());
 		printSolutionInfo(model2);
 		
 		// part d
-		System.out.println("");
-		System.out.println("");
-		System.out.println("Part d:");
+		Log.info("");
+		Log.info("");
+		Log.info("Part d:");
+		Log.info("Lower bound without a model: {}", LowerBounds.best(piecesLarge, ROD_LENGTH2));
 		ModelCG m = new ModelCG(patternsLarge, piecesLarge);
+		// the patterns of the file are in the master already; generated patterns are added to their store
+		m.setColumnPool(columnsLarge);
 		m.solveLPColGen(8);
 		
 		// test: generate all feasible patterns for large instance
-		List<Pattern> patternsAll = createFeasiblePatterns(piecesLarge, ROD_LENGTH2);
-		System.out.println(patternsAll.size());
-		Model2 largeModel = new Model2(patternsAll, piecesLarge);
+		ColumnStore patternsAll = new ColumnStore(piecesLarge);
+		createFeasiblePatterns(piecesLarge, ROD_LENGTH2, patternsAll);
+		Log.info("{} patterns, {} bytes outside the heap", patternsAll.size(), patternsAll.offHeapBytes());
+		Model2 largeModel = new Model2(patternsAll, ROD_LENGTH2, CostModel.RODS);
 		largeModel.solve();
-		System.out.println(largeModel.getObjective());
+		Log.info("{}", largeModel.getObjective());
+
+		// part e: two-dimensional cutting of sheets
+		Log.info("");
+		Log.info("");
+		Log.info("Part e:");
+		List<Item2D> items = new ArrayList<Item2D>();
+		Sheet sheet = readSheetOrder(new File("small_sheets.txt"), items);
+		ModelCG2D m2d = new ModelCG2D(items, sheet);
+		try {
+			SolveOptions options = new SolveOptions();
+			SolveResult<Pattern2D> lp = m2d.solveLPColGen(100, options, SolveListener.<Pattern2D>none());
+			Log.info("Column generation: {} sheets, bound {}, {}", lp.getObjective(), lp.getBound(), lp.getStatus());
+			SolveResult<Pattern2D> ip = m2d.solveIP(options, SolveListener.<Pattern2D>none());
+			Log.info("Objective: {}", ip.getObjective());
+			for (Pattern2D p : ip.getPatterns()) {
+				Log.info("{}", p);
+			}
+		} finally {
+			m2d.end();
+		}
+		Log.flush();
 	}
 	
 	/**
@@ -102,7 +140,7 @@ public class Main
 	 * @param file
 	 * @return
 	 */
-	private static List<Pattern> readPatterns(File file, List<Piece> pieces) {
+	static List<Pattern> readPatterns(File file, List<Piece> pieces) {
 		List<Pattern> patterns = new ArrayList<Pattern>();
 		try
 		{
@@ -139,7 +177,7 @@ public class Main
 	 * Creates a list of all feasible patterns, for the given list of pieces.
 	 * @return
 	 */
-	private static List<Pattern> createFeasiblePatterns(List<Piece> pieces, int MAX_LENGTH) {
+	static List<Pattern> createFeasiblePatterns(List<Piece> pieces, int MAX_LENGTH) {
 		List<Pattern> result = new ArrayList<Pattern>();
 		Queue<Pattern> q1 = new LinkedList<Pattern>();
 		Queue<Pattern> q2 = new LinkedList<Pattern>();
@@ -165,20 +203,12 @@ public class Main
 			}
 			// retrieve the patterns from the full queue. Generate new ones and add the old ones
 			while (!full.isEmpty()) {
-				counter++;
 				Pattern current = full.poll();
-				List<Piece> currentPieces = current.getPieces();
 				empty.add(current);
-				// generate the new pattern
-				List<Piece> newPatternList = new ArrayList<Piece>();
-				newPatternList.addAll(currentPieces);
-				newPatternList.add(pieces.get(i));
-				Pattern newPattern = new Pattern(counter, newPatternList);
-				// check if this pattern is feasible
-				if (newPattern.totalLength() <= MAX_LENGTH) {
-					empty.add(newPattern);
-				} else {
-					counter--; // adjust the counter
+				// generate the new pattern, if it is feasible
+				if (current.totalLength() + pieces.get(i).getLength() <= MAX_LENGTH) {
+					counter++;
+					empty.add(current.with(counter, pieces.get(i)));
 				}
 			}
 		}
@@ -188,40 +218,75 @@ public class Main
 		return result;
 	}
 
+	/**
+	 * Adds all feasible patterns, for the given list of pieces, to a store made for these pieces. The same
+	 * patterns as the list version, but depth first, so only one bitset is in use at a time.
+	 * @param pieces
+	 * @param MAX_LENGTH
+	 * @param store
+	 */
+	static void createFeasiblePatterns(List<Piece> pieces, int MAX_LENGTH, ColumnStore store) {
+		addFeasiblePatterns(pieces, MAX_LENGTH, store, new long[store.words()], 0, 0);
+	}
+
+	/**
+	 * Adds the pattern of the bitset, and every extension of it with pieces from position i on that fits
+	 */
+	private static void addFeasiblePatterns(List<Piece> pieces, int MAX_LENGTH, ColumnStore store, long[] bits, int i, int length) {
+		store.add(bits, store.size() + 1, ColumnStore.ORIGIN_ENUMERATED);
+		for (int j = i; j < pieces.size(); j++) {
+			if (length + pieces.get(j).getLength() <= MAX_LENGTH) {
+				bits[j >>> 6] |= 1L << j;
+				addFeasiblePatterns(pieces, MAX_LENGTH, store, bits, j + 1, length + pieces.get(j).getLength());
+				bits[j >>> 6] &= ~(1L << j);
+			}
+		}
+	}
+
 	/**
 	 * Prints solution information from the model that has been solved.
 	 * @throws IloException 
 	 * @throws UnknownObjectException 
 	 */
 	private static void printSolutionInfo(Model model) throws UnknownObjectException, IloException {
+		if (!Log.isEnabled(Log.Level.INFO)) {
+			return;
+		}
 		Map<Rod,List<Piece>> result = model.getRods();
 		// print the pieces per rod, and the total length used per rod
 		int counter = 0;
 		for (Rod r : result.keySet()) {
 			counter++;
-			System.out.print("Rod " + counter + ": ");
+			StringBuilder line = new StringBuilder();
+			line.append("Rod ").append(counter).append(": ");
 			int length = 0;
 			for (Piece p : result.get(r)) {
 				length = length + p.getLength();
-				System.out.print(p + " ");
+				p.appendTo(line).append(' ');
 			}
-			System.out.println(" with total length: " + length);
+			line.append(" with total length: ").append(length);
+			Log.info("{}", line);
 		}
 	}
 	
 	private static void printSolutionInfo(Model2 model2) throws UnknownObjectException, IloException {
+		if (!Log.isEnabled(Log.Level.INFO)) {
+			return;
+		}
 		List<Pattern> result = model2.getPatterns();
 		// print the pieces per rod, and the total length used per rod
 		int counter = 0;
 		for (Pattern p : result) {
 			counter++;
-			System.out.print("Pattern " + counter + ": ");
+			StringBuilder line = new StringBuilder();
+			line.append("Pattern ").append(counter).append(": ");
 			int length = 0;
 			for (Piece pi : p.getPieces()) {
 				length = length + pi.getLength();
-				System.out.print(pi + " ");
+				pi.appendTo(line).append(' ');
 			}
-			System.out.println(" with total length: " + length);
+			line.append(" with total length: ").append(length);
+			Log.info("{}", line);
 		}
 	}
 
@@ -230,12 +295,12 @@ public class Main
 	 * @param file
 	 * @return
 	 */
-	private static List<Piece> readFile(File file) {
+	static List<Piece> readFile(File file) {
 		List<Piece> allPieces = new ArrayList<Piece>();
 		try
 		{
 			Scanner s = new Scanner(file);
-			while (s.hasNextLine())
+			while (s.hasNextInt())		// also accepts a trailing newline, as written by InstanceGenerator
 			{
 				int index = s.nextInt();
 				int length = s.nextInt();
@@ -251,4 +316,34 @@ public class Main
 		return allPieces;
 	}
 
+	/**
+	 * Reads an order of sheets: a first line with the width and height of the sheet, then a line per item
+	 * with its index, width, height and demand
+	 * @param file
+	 * @param items the items are added to this list
+	 * @return the sheet
+	 */
+	static Sheet readSheetOrder(File file, List<Item2D> items) {
+		Sheet sheet = null;
+		try
+		{
+			Scanner s = new Scanner(file);
+			sheet = new Sheet(s.nextInt(), s.nextInt());
+			while (s.hasNextInt())
+			{
+				int index = s.nextInt();
+				int width = s.nextInt();
+				int height = s.nextInt();
+				int demand = s.nextInt();
+				items.add(new Item2D(index, width, height, demand));
+			}
+			s.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+		return sheet;
+	}
+
 }
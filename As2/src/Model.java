@@ -4,8 +4,8 @@ import java.util.List;
 import java.util.Map;
 
 import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloModel;
-import ilog.concert.IloNumExpr;
 import ilog.concert.IloNumVar;
 import ilog.concert.IloNumVarType;
 import ilog.cplex.IloCplex;
@@ -21,9 +21,9 @@ public class Model{
 	private final List<Rod> rods;
 	private final List<Piece> pieces;
 	private IloCplex cplex;
-	// variables
-	private Map<Rod,Map<Piece,IloNumVar>> x;
-	private Map<Rod,IloNumVar> y;
+	// variables, indexed by the position of the rod and the position of the piece
+	private IloNumVar[][] x;
+	private IloNumVar[] y;
 	private final int ROD_LENGTH;
 	
 	public Model(List<Rod> rods, List<Piece> pieces) throws IloException
@@ -32,15 +32,16 @@ public class Model{
 		this.pieces = pieces;
 		
 		cplex = new IloCplex();
-		x = new HashMap<Rod,Map<Piece,IloNumVar>>();
-		y = new HashMap<Rod,IloNumVar>();
 		ROD_LENGTH = rods.get(0).getLength();
 		
 		addVariables();
 		addObjective();
 		addDoPiecesConstraints();
 		addLengthConstraints();
-		cplex.exportModel("model.lp");
+		// export for debugging only
+		if (Log.isDebugEnabled()) {
+			cplex.exportModel("model.lp");
+		}
 		cplex.setOut(null);
 	}
 	
@@ -52,14 +53,69 @@ public class Model{
 	{
 		cplex.solve();
 	}
+	
+	/**
+	 * Solve the model within the limits of the options. Improving solutions and bounds are passed
+	 * to the listener, with one pattern per used rod. The best known solution is returned when the limits are hit.
+	 * @param options
+	 * @param listener
+	 * @return
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern> solve(final SolveOptions options, SolveListener<Pattern> listener) throws IloException
+	{
+		IloCplex.Aborter aborter = options.apply(cplex);
+		if (cplex.isMIP()) {
+			cplex.use(new IncumbentReporter(options, listener) {
+				@Override
+				protected List<Pattern> extract() throws IloException {
+					double[] used = getValues(y);
+					List<Pattern> result = new ArrayList<Pattern>();
+					for (int k = 0; k < used.length; k++) {
+						if (used[k] > 0.01) {
+							double[] values = getValues(x[k]);
+							List<Piece> currentPieces = new ArrayList<Piece>();
+							for (int i = 0; i < values.length; i++) {
+								if (values[i] > 0.01) {
+									currentPieces.add(pieces.get(i));
+								}
+							}
+							result.add(new Pattern(result.size() + 1, currentPieces));
+						}
+					}
+					return result;
+				}
+			});
+		}
+		try {
+			if (!options.isStopped()) {
+				cplex.solve();
+			}
+		} finally {
+			cplex.clearCallbacks();
+			options.release(cplex, aborter);
+		}
+		double objective = Double.POSITIVE_INFINITY;
+		List<Pattern> result = null;
+		double bound = Double.NEGATIVE_INFINITY;
+		if (cplex.isPrimalFeasible()) {
+			objective = getObjective();
+			result = new ArrayList<Pattern>();
+			for (List<Piece> rodPieces : getRods().values()) {
+				result.add(new Pattern(result.size() + 1, rodPieces));
+			}
+			bound = cplex.isMIP() ? cplex.getBestObjValue() : objective;
+		}
+		return SolveResult.of(objective, bound, result, options, SolveResult.Status.OPTIMAL);
+	}
 
  	
 	public void solveLP() throws IloException
 	{
-		for (Rod r: rods)
+		for (IloNumVar var : y)
 		{
-			// get the rod variable from y and add LP relaxation
-			cplex.add(cplex.conversion(y.get(r),IloNumVarType.Float));
+			// add LP relaxation of the rod variable
+			cplex.add(cplex.conversion(var,IloNumVarType.Float));
 		}
 		cplex.solve();
 		
@@ -71,21 +127,16 @@ public class Model{
 	 */
 	private void addVariables() throws IloException
 	{
-		int i = 1;
-		for (Rod r: rods)
+		y = new IloNumVar[rods.size()];
+		x = new IloNumVar[rods.size()][pieces.size()];
+		for (int k = 0; k < rods.size(); k++)
 		{
 			// add the rod variable y
-			IloNumVar var = cplex.intVar(0,1,"y"+i);
-			y.put(r, var);
-			// create a new map  for this rod
-			Map<Piece, IloNumVar> varMap = new HashMap<Piece,IloNumVar>();
-			x.put(r, varMap);
+			y[k] = cplex.intVar(0,1,"y"+(k+1));
 			// add a variable for each piece, for this rod (x_ik)
-			for (Piece p : pieces) {
-				IloNumVar var2 = cplex.intVar(0, pieces.size(), "x"+i+"," + p.getIndex());
-				x.get(r).put(p, var2);
+			for (int j = 0; j < pieces.size(); j++) {
+				x[k][j] = cplex.intVar(0, pieces.size(), "x"+(k+1)+"," + pieces.get(j).getIndex());
 			}
-			i++;
 		}
 	}
 	
@@ -95,12 +146,10 @@ public class Model{
 	 */
 	private void addObjective() throws IloException
 	{
-		IloNumExpr obj = cplex.constant(0);
+		IloLinearNumExpr obj = cplex.linearNumExpr();
 		// add the vars corresponding to the rods (y_k)
-		for (Rod r : rods) { 
-			{
-				 obj = cplex.sum(obj, y.get(r));	
-			}
+		for (IloNumVar var : y) {
+			obj.addTerm(1, var);
 		}
 		cplex.addMinimize(obj);
 	}
@@ -112,14 +161,14 @@ public class Model{
 	private void addDoPiecesConstraints() throws IloException
 	{
 		// add a constraint for each piece
-		for (Piece p : pieces) {
-			IloNumExpr lhs = cplex.constant(0);
+		for (int j = 0; j < pieces.size(); j++) {
+			IloLinearNumExpr lhs = cplex.linearNumExpr();
 			// sum over the rods
-			for (Rod r : rods) {
-				lhs = cplex.sum(lhs, x.get(r).get(p));
+			for (int k = 0; k < rods.size(); k++) {
+				lhs.addTerm(1, x[k][j]);
 			}
 			// add the constraint: rhs=1 because pieces of the same length are uniquely defined
-			cplex.addEq(lhs, 1,"cover"+p.getIndex());
+			cplex.addEq(lhs, 1,"cover"+pieces.get(j).getIndex());
 		}
 	}
 	
@@ -131,18 +180,16 @@ public class Model{
 	private void addLengthConstraints() throws IloException 
 	{
 		// add a constraint for each rod
-		int i = 1;
-		for (Rod r : rods) {
-			IloNumExpr lhs = cplex.constant(0);
+		for (int k = 0; k < rods.size(); k++) {
+			IloLinearNumExpr lhs = cplex.linearNumExpr();
 			// now we loop over the pieces to compute the total length of the pieces in the rod
-			for (Piece p : pieces) {
-				IloNumExpr prod = cplex.prod(x.get(r).get(p), p.getLength());
-				lhs = cplex.sum(lhs, prod);
+			for (int j = 0; j < pieces.size(); j++) {
+				lhs.addTerm(pieces.get(j).getLength(), x[k][j]);
 			}
-			IloNumExpr rhs = cplex.prod(ROD_LENGTH, y.get(r));
+			// minus the length of the rod, if it is used
+			lhs.addTerm(-ROD_LENGTH, y[k]);
 			// add the constraint
-			cplex.addLe(lhs, rhs,"length"+i);
-			i++;
+			cplex.addLe(lhs, 0,"length"+(k+1));
 		}
 	}
 	
@@ -166,21 +213,29 @@ public class Model{
 	 */
 	public Map<Rod,List<Piece>> getRods() throws UnknownObjectException, IloException {
 		Map<Rod, List<Piece>> result = new HashMap<Rod,List<Piece>>();
-		for (Rod r : rods) {
-			double val = cplex.getValue(y.get(r));
-			if (val > 0.01) {
+		// one call for the rods, and one for the pieces of every used rod
+		double[] used = cplex.getValues(y);
+		for (int k = 0; k < used.length; k++) {
+			if (used[k] > 0.01) {
 				// put the pieces in a list
+				double[] values = cplex.getValues(x[k]);
 				List<Piece> currentPieces = new ArrayList<Piece>();
-				for (Piece p : pieces) {
-					double pieceVal = cplex.getValue(x.get(r).get(p));
+				for (int i = 0; i < values.length; i++) {
 					// check whether the piece is cut from this rod
-					if (pieceVal > 0.01) {
-						currentPieces.add(p);
+					if (values[i] > 0.01) {
+						currentPieces.add(pieces.get(i));
 					}
 				}
-				result.put(r, currentPieces);
+				result.put(rods.get(k), currentPieces);
 			}
 		}
 		return result;
 	}
+	
+	/**
+	 * Releases the native CPLEX resources. The model cannot be used afterwards.
+	 */
+	public void end() {
+		cplex.end();
+	}
 }
@@ -1,11 +1,9 @@
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloModel;
-import ilog.concert.IloNumExpr;
 import ilog.concert.IloNumVar;
 import ilog.concert.IloNumVarType;
 import ilog.concert.IloRange;
@@ -19,26 +17,62 @@ import ilog.cplex.IloCplex.UnknownObjectException;
  */
 
 public class Model2{
-	private final List<Pattern> patterns;
+	// the patterns, outside the heap; a var per column
+	private final ColumnStore columns;
 	private final List<Piece> pieces;
 	private IloCplex cplex;
-	// variables
-	private Map<Pattern,IloNumVar> x;
-	// map for the constraints
-	private Map<Piece, IloRange> constraints;
+	// variables, in the order of the patterns
+	private IloNumVar[] x;
+	// constraints, indexed by the id of the piece
+	private IloRange[] constraints;
+	// setup vars, one per distinct length multiset; only with setup costs
+	private IloNumVar[] setups;
+	private final int ROD_LENGTH;
+	private final CostModel costs;
 	
 	public Model2(List<Pattern> patterns, List<Piece> pieces) throws IloException
 	{
-		this.patterns = patterns;
-		this.pieces = pieces;
+		this(patterns, pieces, 0, CostModel.RODS);
+	}
+	
+	/**
+	 * Constructor for a model that minimizes the costs of the cost model: every pattern costs the column
+	 * cost, for its rod and waste, and with setup costs a var per distinct length multiset pays its setup
+	 * once it is used. Solutions passed to the listener count rods, like the objective of the results.
+	 * @param patterns
+	 * @param pieces
+	 * @param rodLength
+	 * @param costs
+	 * @throws IloException
+	 */
+	public Model2(List<Pattern> patterns, List<Piece> pieces, int rodLength, CostModel costs) throws IloException
+	{
+		this(toStore(patterns, pieces), rodLength, costs);
+	}
+	
+	/**
+	 * Constructor for a model over the columns of a store, which are read through a view: no Pattern
+	 * objects are made for the columns, only for the columns of a solution.
+	 * @param columns
+	 * @param rodLength
+	 * @param costs
+	 * @throws IloException
+	 */
+	public Model2(ColumnStore columns, int rodLength, CostModel costs) throws IloException
+	{
+		this.ROD_LENGTH = rodLength;
+		this.costs = costs;
+		this.columns = columns;
+		this.pieces = columns.getPieces();
 		cplex = new IloCplex();
-		x = new HashMap<Pattern,IloNumVar>();
-		constraints = new HashMap<Piece, IloRange>();
 		
 		addVariables();
 		addObjective();
 		addDoPiecesConstraints();
-		cplex.exportModel("model2.lp");
+		// the export is a diagnostic: skip it when it would not be logged anyway (it is slow, and not thread safe)
+		if (Log.isDebugEnabled()) {
+			cplex.exportModel("model2.lp");
+		}
 		cplex.setOut(null);
 	}
 	
@@ -50,6 +84,49 @@ public class Model2{
 	{
 		cplex.solve();
 	}
+	
+	/**
+	 * Solve the model within the limits of the options. Improving solutions and bounds are passed
+	 * to the listener, and the best known solution is returned when the limits are hit.
+	 * @param options
+	 * @param listener
+	 * @return
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern> solve(final SolveOptions options, SolveListener<Pattern> listener) throws IloException
+	{
+		IloCplex.Aborter aborter = options.apply(cplex);
+		if (cplex.isMIP()) {
+			cplex.use(new IncumbentReporter(options, listener, costs.isRodsOnly() ? costs.getColumnCost(ROD_LENGTH) : 0) {
+				@Override
+				protected List<Pattern> extract() throws IloException {
+					return PatternSolution.of(getValues(x)).toPatterns(columns);
+				}
+			});
+		}
+		try {
+			if (!options.isStopped()) {
+				cplex.solve();
+			}
+		} finally {
+			cplex.clearCallbacks();
+			options.release(cplex, aborter);
+		}
+		double objective = Double.POSITIVE_INFINITY;
+		List<Pattern> result = null;
+		double bound = Double.NEGATIVE_INFINITY;
+		if (cplex.isPrimalFeasible()) {
+			result = getPatterns();
+			if (costs.isRodsOnly()) {
+				// the objective is the number of rods times the column cost
+				objective = getObjective() / costs.getColumnCost(ROD_LENGTH);
+				bound = cplex.isMIP() ? cplex.getBestObjValue() / costs.getColumnCost(ROD_LENGTH) : objective;
+			} else {
+				objective = result.size();
+			}
+		}
+		return SolveResult.of(objective, bound, result, options, SolveResult.Status.OPTIMAL);
+	}
 
  	/**
  	 * Solve the LP relaxation
@@ -57,10 +134,15 @@ public class Model2{
  	 */
 	public void solveLP() throws IloException
 	{
-		for (Pattern r: patterns)
+		for (IloNumVar var : x)
 		{
-			// get the pattern variable from y and add LP relaxation
-			cplex.add(cplex.conversion(x.get(r),IloNumVarType.Float));
+			// add LP relaxation of the pattern variable
+			cplex.add(cplex.conversion(var,IloNumVarType.Float));
+		}
+		if (setups != null) {
+			for (IloNumVar var : setups) {
+				cplex.add(cplex.conversion(var,IloNumVarType.Float));
+			}
 		}
 		cplex.solve();
 		
@@ -72,13 +154,11 @@ public class Model2{
 	 */
 	private void addVariables() throws IloException
 	{
-		int i = 1;
-		for (Pattern r: patterns)
+		x = new IloNumVar[columns.size()];
+		for (int i = 0; i < x.length; i++)
 		{
-			// add the pattern variable y
-			IloNumVar var = cplex.intVar(0,1,"x"+i);
-			x.put(r, var);			
-			i++;
+			// add the pattern variable
+			x[i] = cplex.intVar(0,1,"x"+(i+1));
 		}
 	}
 	
@@ -88,36 +168,52 @@ public class Model2{
 	 */
 	private void addObjective() throws IloException
 	{
-		IloNumExpr obj = cplex.constant(0);
-		// add the vars corresponding to the patterns (y_k)
-		for (Pattern r : patterns) { 
-			{
-				 obj = cplex.sum(obj, x.get(r));	
+		IloLinearNumExpr obj = cplex.linearNumExpr();
+		// add the vars corresponding to the patterns (y_k); every pattern costs the same, like in ModelCG
+		for (int k = 0; k < x.length; k++) {
+			obj.addTerm(costs.getColumnCost(ROD_LENGTH), x[k]);
+		}
+		if (costs.getSetupCost() > 0) {
+			// a pattern can only be cut when its setup is paid
+			int[] layout = PatternReducer.layoutIds(columns);
+			int count = 0;
+			for (int id : layout) {
+				count = Math.max(count, id + 1);
+			}
+			setups = new IloNumVar[count];
+			for (int g = 0; g < count; g++) {
+				setups[g] = cplex.boolVar("setup"+(g+1));
+				obj.addTerm(costs.getSetupCost(), setups[g]);
+			}
+			for (int k = 0; k < x.length; k++) {
+				cplex.addLe(x[k], setups[layout[k]]);
 			}
 		}
 		cplex.addMinimize(obj);
 	}
 	
 	/**
-	 * Adds the constraints that make sure each Piece is cut. Save the constraints in a map
+	 * Adds the constraints that make sure each Piece is cut. Save the constraints by the id of the piece
 	 * @throws IloException
 	 */
 	private void addDoPiecesConstraints() throws IloException
 	{
-		// add a constraint for each piece
-		for (Piece p : pieces) {
-			IloNumExpr lhs = cplex.constant(0);
-			// sum over the patterns
-			for (Pattern r : patterns) {
-				if (r.getPieces().contains(p))
-				{
-					lhs = cplex.sum(lhs, x.get(r));					
-				}
+		// one pass over the patterns: the var of a pattern enters the constraints of its pieces
+		IloLinearNumExpr[] lhs = new IloLinearNumExpr[pieces.size()];
+		for (int i = 0; i < lhs.length; i++) {
+			lhs[i] = cplex.linearNumExpr();
+		}
+		ColumnStore.View column = columns.view();
+		for (int k = 0; k < x.length; k++) {
+			column.moveTo(k);
+			for (int id = column.nextPiece(0); id >= 0; id = column.nextPiece(id + 1)) {
+				lhs[id].addTerm(1, x[k]);
 			}
+		}
+		constraints = new IloRange[pieces.size()];
+		for (int id = 0; id < constraints.length; id++) {
 			// add the constraint: rhs=1 because pieces of the same length are uniquely defined
-			IloRange currentConstr = cplex.addGe(lhs, 1,"cover"+p.getIndex());		// doordat dit eerst addEq was, kreeg ik een foutmelding bij c
-			// add to the map
-			constraints.put(p, currentConstr);
+			constraints[id] = cplex.addGe(lhs[id], 1,"cover"+pieces.get(id).getIndex());		// doordat dit eerst addEq was, kreeg ik een foutmelding bij c
 		}
 	}
 
@@ -139,14 +235,40 @@ public class Model2{
 	 * @throws UnknownObjectException 
 	 */
 	public List<Pattern> getPatterns() throws UnknownObjectException, IloException {
-		List<Pattern> result = new ArrayList<Pattern>();
-		for (Pattern r : patterns) {
-			double val = cplex.getValue(x.get(r));
-			if (val > 0.01) {
-				// put the used patterns in a list				
-				result.add(r);
+		return getSolution().toPatterns(columns);
+	}
+	
+	/**
+	 * Returns the used patterns as positions in the list of patterns, read with one call to CPLEX.
+	 * @return
+	 * @throws IloException
+	 */
+	public PatternSolution getSolution() throws IloException {
+		return PatternSolution.of(cplex.getValues(x));
+	}
+	
+	/**
+	 * Copies patterns into a new store over the pieces. Pieces of other orders are left out: they are
+	 * not covered by this model.
+	 */
+	private static ColumnStore toStore(List<Pattern> patterns, List<Piece> pieces) {
+		ColumnStore store = new ColumnStore(pieces);
+		for (Pattern p : patterns) {
+			Pattern own = p;
+			for (Piece piece : p.getPieces()) {
+				if (!store.contains(piece)) {
+					own = own.without(piece);
+				}
 			}
+			store.add(own, ColumnStore.ORIGIN_INPUT);
 		}
-		return result;
+		return store;
+	}
+	
+	/**
+	 * Releases the native CPLEX resources. The model cannot be used afterwards.
+	 */
+	public void end() {
+		cplex.end();
 	}
 }
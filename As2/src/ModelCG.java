@@ -1,18 +1,22 @@
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import ilog.concert.IloColumn;
 import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloModel;
-import ilog.concert.IloNumExpr;
 import ilog.concert.IloNumVar;
 import ilog.concert.IloNumVarType;
 import ilog.concert.IloObjective;
 import ilog.concert.IloRange;
-import ilog.cplex.IloCplex;
 import ilog.cplex.IloCplex.UnknownObjectException;
 
 /**
@@ -21,53 +25,129 @@ import ilog.cplex.IloCplex.UnknownObjectException;
  *
  */
 
-public class ModelCG{
+public class ModelCG extends ColumnGeneration<Pattern>{
 	private final List<Pattern> patterns;
 	private final List<Piece> pieces;
-	private IloCplex cplex;
+	// position of every piece in pieces; rows, duals and values are indexed by it. The pieces themselves
+	// are shared with other models, so the positions are kept here
+	private final Map<Piece, Integer> positions = new IdentityHashMap<Piece, Integer>();
 	private final int ROD_LENGTH;
-	// variables
-	private Map<Pattern,IloNumVar> x;
-	// map for the constraints
-	private Map<Piece, IloRange> constraints;
+	// cost of a column, and the values of the pricing problem
+	private final CostModel costs;
+	// variables, in the order of the patterns; the array grows with the patterns
+	private IloNumVar[] x;
+	// constraints, indexed by the position of the piece
+	private IloRange[] constraints;
 	// objective expression
 	private IloObjective objective;
+	// number of columns created so far, for the names of the vars
+	private int columnCounter;
+	// store that receives the generated columns, or null
+	private ColumnStore pool;
+	// prices the columns of the pool, and the pool columns that are in the master already
+	private PoolPricer poolPricer;
+	private BitSet pooledInMaster;
+	// most columns taken from the pool per iteration
+	private static final int POOL_COLUMNS = 10;
+	// a pool column must beat the optimality tolerance of the master
+	private static final double POOL_TOLERANCE = 1e-6;
 	
 	public ModelCG(List<Pattern> patterns, List<Piece> pieces) throws IloException
 	{
+		this(patterns, pieces, 400);
+	}
+	
+	public ModelCG(List<Pattern> patterns, List<Piece> pieces, int rodLength) throws IloException
+	{
+		this(patterns, pieces, rodLength, CostModel.RODS);
+	}
+	
+	/**
+	 * Constructor for a master that charges every column the column cost of the cost model, which covers
+	 * the rod and the waste. The rounded solutions and the bounds passed to the listener count rods; bounds
+	 * are only passed on when setups are free, since the master does not see them.
+	 * @param patterns
+	 * @param pieces
+	 * @param rodLength
+	 * @param costs
+	 * @throws IloException
+	 */
+	public ModelCG(List<Pattern> patterns, List<Piece> pieces, int rodLength, CostModel costs) throws IloException
+	{
+		this.costs = costs;
 		this.patterns = patterns;
 		this.pieces = pieces;
-		System.out.println(patterns.size() + ", " + pieces.size());
-		cplex = new IloCplex();
-		x = new HashMap<Pattern,IloNumVar>();
-		constraints = new HashMap<Piece, IloRange>();
+		Log.debug("Master with {} patterns and {} pieces", patterns.size(), pieces.size());
+		for (int i = 0; i < pieces.size(); i++) {
+			positions.put(pieces.get(i), i);
+		}
+		x = new IloNumVar[Math.max(16, 2 * patterns.size())];
+		constraints = new IloRange[Math.max(16, pieces.size())];
 		
-		ROD_LENGTH = 400;
+		ROD_LENGTH = rodLength;
 		
 		addVariables();
 		addObjective();
 		addDoPiecesConstraints();
-		cplex.exportModel("modelCG.lp");
+		// export only when debugging: parallel solves would overwrite the same file
+		if (Log.isDebugEnabled()) {
+			cplex.exportModel("modelCG.lp");
+		}
 		cplex.setOut(null);
 	}
 	
 	/**
-	 * Solve the model
-	 * @throws IloException
+	 * Sets a store that receives every column that is generated from now on, so the columns outlive the
+	 * model outside the heap. The store must be made for the pieces of the model, in the same order.
+	 * Before any knapsack is solved, the store is scanned for columns with a negative reduced cost, and
+	 * the best of them enter the master; columns that are read from a file or kept from earlier solves can
+	 * be in the store from the start.
+	 * The store is let go when pieces are added or removed, since its bitsets refer to the old order.
+	 * @param pool
 	 */
-	public void solve() throws IloException
-	{
-		cplex.solve();
+	public void setColumnPool(ColumnStore pool) {
+		List<Piece> poolPieces = pool.getPieces();
+		boolean same = poolPieces.size() == pieces.size();
+		for (int i = 0; same && i < pieces.size(); i++) {
+			same = poolPieces.get(i) == pieces.get(i);
+		}
+		if (!same) {
+			throw new IllegalArgumentException("The pool is made for other pieces");
+		}
+		this.pool = pool;
+		this.poolPricer = new PoolPricer(pool);
+		this.pooledInMaster = new BitSet();
+		// the columns of the master are never taken again: with their upper bound of 1, a column of the
+		// master can have a negative reduced cost
+		Set<BitSet> inMaster = new HashSet<BitSet>();
+		for (Pattern p : patterns) {
+			BitSet bits = new BitSet(pieces.size());
+			for (int j = 0; j < p.size(); j++) {
+				bits.set(position(p.getPiece(j)));
+			}
+			inMaster.add(bits);
+		}
+		ColumnStore.View column = pool.view();
+		long[] words = new long[pool.words()];
+		for (int c = 0; c < pool.size(); c++) {
+			column.moveTo(c);
+			for (int w = 0; w < words.length; w++) {
+				words[w] = column.getWord(w);
+			}
+			if (inMaster.contains(BitSet.valueOf(words))) {
+				pooledInMaster.set(c);
+			}
+		}
 	}
 	
-	public Map<Piece, Double> getDuals() throws UnknownObjectException, IloException {
-		Map<Piece, Double> duals = new HashMap<Piece,Double>();
-		// retrieve the value for each constraint
-		for (Piece p : pieces) {
-			double val = cplex.getDual(constraints.get(p));
-			duals.put(p, val);
-		}
-		return duals;
+	/**
+	 * Returns the duals, indexed by the position of the piece, read with one call to CPLEX.
+	 * @return
+	 * @throws IloException
+	 */
+	@Override
+	public double[] getDuals() throws UnknownObjectException, IloException {
+		return cplex.getDuals(constraints, 0, pieces.size());
 	}
 	
 	/**
@@ -76,64 +156,189 @@ public class ModelCG{
 	 */
 	public void solveLPColGen(int iterations) throws IloException
 	{
-		// initialize the map for the duals
-		Map<Piece,Double> duals = new HashMap<Piece,Double>();
-		// run the algorithm for each iteration
-		int c = 0;		// count the number of times the heuristic pattern was used
-		for (int i=0; i<iterations; i++) {
-			// solve the restricted master problem
-			this.solve();
-			System.out.println("Iteration " + i + ": " + this.getObjective());
-			// obtain the dual variables
-			duals = this.getDuals();
-			
-			// knapsack heuristic
-			for (Piece p: pieces)
+		solveLPColGen(iterations, new SolveOptions(), SolveListener.<Pattern>none());
+	}
+	
+	/**
+	 * Solve the LP relaxation with column generation, for at most the given number of iterations and within
+	 * the limits of the options. After every master solve the LP solution is rounded up (every used pattern once),
+	 * which is a feasible solution; improvements of it and of the lower bound are passed to the listener.
+	 * @return the best rounded solution and the best bound
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern> solveLPColGen(int iterations, SolveOptions options, SolveListener<Pattern> listener) throws IloException
+	{
+		SolveResult<Pattern> result = generate(iterations, options, listener, new RodPricer());
+		Log.debug("Columns found by the heuristic: {}, taken from the pool: {}", getMetrics().getHeuristicColumns(), getMetrics().getPoolColumns());
+		return result;
+	}
+	
+	/**
+	 * Prices in up to three steps: the columns of the pool, then a greedy heuristic, and the knapsack model only
+	 * when the heuristic finds no column with a negative reduced cost.
+	 */
+	private class RodPricer implements ColumnGeneration.Pricer<Pattern> {
+		
+		@Override
+		public List<Pattern> price(double[] duals, int index, ColGenMetrics metrics) throws IloException
+		{
+			// the value of every piece in the pricing problem is its dual; a column costs the same for every pattern
+			double[] values = duals;
+			double rodValue = getColumnCost();
+			// the pool first: a scan of the stored columns is much cheaper than a knapsack
+			int[] pooled = pool == null ? new int[0]
+					: poolPricer.scan(values, rodValue, POOL_COLUMNS, -POOL_TOLERANCE * rodValue, pooledInMaster);
+			if (pool != null) {
+				metrics.priced(ColGenMetrics.POOL, pooled.length > 0 ? poolPricer.getReducedCost(0) / rodValue : 0);
+			}
+			if (pooled.length > 0) {
+				List<Pattern> result = new ArrayList<Pattern>(pooled.length);
+				for (int c : pooled) {
+					result.add(new Pattern(index + result.size(), pool.toPattern(c).getPieces()));
+					pooledInMaster.set(c);
+				}
+				return result;
+			}
+			// knapsack heuristic: the positions sorted by value per unit of length, highest first. The
+			// ratios are kept here, not in the pieces, which other models may be sorting at the same time
+			final double[] ratios = new double[pieces.size()];
+			Integer[] byRatio = new Integer[pieces.size()];
+			for (int j = 0; j < ratios.length; j++)
 			{
-				double ratio = duals.get(p)/p.getLength();
-				p.setRatio(ratio);
+				ratios[j] = values[j]/pieces.get(j).getLength();
+				byRatio[j] = j;
 			}
-			Collections.sort(pieces);
+			Arrays.sort(byRatio, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer j1, Integer j2) {
+					return Double.compare(ratios[j2], ratios[j1]);
+				}
+			});
 			List<Piece> heuristicPieces = new ArrayList<Piece>();
 			int length = 0;
 			double totalCost = 0;;
 			// add all pieces that fit
-			for (Piece p: pieces)
+			for (int j: byRatio)
 			{
+				Piece p = pieces.get(j);
 				if (length + p.getLength() < ROD_LENGTH) {
 					heuristicPieces.add(p);
-					totalCost = totalCost + duals.get(p);
+					totalCost = totalCost + values[j];
 					length = length + p.getLength();
 				} 
 			}
-			double reducedCost = 1-totalCost;
+			double reducedCost = rodValue-totalCost;
 			Pattern newPattern = null;
+			// relative to the cost of a rod, so Farley's bound holds for any cost model
+			metrics.priced(ColGenMetrics.HEURISTIC, reducedCost / rodValue);
 			
 			// check whether the heuristic was enough
 			if (reducedCost < 0) {
-				newPattern = new Pattern(patterns.size()+1, heuristicPieces);
-				c++;
+				newPattern = new Pattern(index, heuristicPieces);
 			} else {
 				// build model for the pricing problem
-				KnapsackModel pricing = new KnapsackModel(ROD_LENGTH, duals, pieces, patterns.size());
+				KnapsackModel pricing = new KnapsackModel(ROD_LENGTH, values, pieces, index - 1);
 				pricing.solve();
-				reducedCost = 1-pricing.getObjective();
-				// adjust the model such that the new pattern is included
+				reducedCost = rodValue-pricing.getObjective();
+				metrics.priced(ColGenMetrics.KNAPSACK, reducedCost / rodValue);
 				newPattern = pricing.getPattern();
-				
+				pricing.end();
 			}
 			// if reducedCost not negative, we are optimal
 			if (reducedCost >= 0) {
-				break;
+				return Collections.emptyList();
+			}
+			if (pool != null) {
+				pooledInMaster.set(pool.add(newPattern, ColumnStore.ORIGIN_GENERATED));
 			}
-			System.out.println("Pattern added in iteration " + i + ": " + newPattern.toString() + " with reduced cost: " + reducedCost);
-			patterns.add(newPattern);
-			addVariable(newPattern);
-			changeDoPiecesConstraints(newPattern.getPieces());		// change the constraints for the pieces in the new pattern
-			regenerateObjective();
-//			cplex.exportModel("modelCGiteratie1.lp");
+			return Collections.singletonList(newPattern);
+		}
+	}
+	
+	/**
+	 * Adds a piece to the order. It gets its own constraint and a column with only this piece, so the
+	 * master stays feasible; all existing columns stay valid. Call solveLPColGen again to re-optimize:
+	 * CPLEX starts from the previous basis and the existing columns.
+	 * A higher demand for a length is expressed as extra pieces of that length.
+	 * @param p
+	 * @throws IloException
+	 */
+	public void addPiece(Piece p) throws IloException
+	{
+		if (p.getLength() > ROD_LENGTH) {
+			throw new IllegalArgumentException("Piece " + p + " is longer than the rod");
+		}
+		if (positions.containsKey(p)) {
+			throw new IllegalArgumentException("Piece " + p + " is in the order already");
+		}
+		int id = pieces.size();
+		positions.put(p, id);
+		pieces.add(p);
+		dropPool();
+		if (id == constraints.length) {
+			constraints = Arrays.copyOf(constraints, 2 * constraints.length);
+		}
+		constraints[id] = cplex.addRange(1, Double.MAX_VALUE, "cover"+p.getIndex());
+		List<Piece> single = new ArrayList<Piece>();
+		single.add(p);
+		Pattern pattern = new Pattern(patterns.size()+1, single);
+		patterns.add(pattern);
+		addVariable(pattern);
+	}
+	
+	/**
+	 * Removes a piece from the order. Its constraint is deleted; a column that contained the piece now
+	 * represents the same pattern without it, which is still feasible, so its var and its place in the
+	 * basis are kept. Only columns that become empty are deleted. Call solveLPColGen again to re-optimize.
+	 * A lower demand for a length is expressed as removing pieces of that length.
+	 * @param p
+	 * @throws IloException
+	 */
+	public void removePiece(Piece p) throws IloException
+	{
+		Integer id = positions.remove(p);
+		if (id == null) {
+			return;
+		}
+		cplex.delete(constraints[id]);
+		dropPool();
+		// the last piece takes the position of the removed one, so the positions stay dense
+		int last = pieces.size() - 1;
+		Piece moved = pieces.remove(last);
+		if (moved != p) {
+			pieces.set(id, moved);
+			positions.put(moved, id);
+			constraints[id] = constraints[last];
+		}
+		constraints[last] = null;
+		int kept = 0;
+		for (int i = 0; i < patterns.size(); i++) {
+			Pattern r = patterns.get(i);
+			IloNumVar var = x[i];
+			if (r.contains(p)) {
+				if (r.size() == 1) {
+					cplex.delete(var);
+					continue;
+				}
+				r = r.without(p);
+			}
+			patterns.set(kept, r);
+			x[kept] = var;
+			kept++;
+		}
+		for (int i = patterns.size() - 1; i >= kept; i--) {
+			patterns.remove(i);
+			x[i] = null;
+		}
+	}
+	
+	private void dropPool() {
+		if (pool != null) {
+			Log.debug("The order changed: the column pool of {} columns is let go", pool.size());
+			pool = null;
+			poolPricer = null;
+			pooledInMaster = null;
 		}
-		System.out.println(c);
 	}
 	
 	/**
@@ -142,25 +347,31 @@ public class ModelCG{
 	 */
 	private void addVariables() throws IloException
 	{
-		int i = 1;
-		for (Pattern r: patterns)
+		for (int i = 0; i < patterns.size(); i++)
 		{
 			// add the pattern variable y
-			IloNumVar var = cplex.numVar(0,1,"x"+i);
-			x.put(r, var);			
-			i++;
+			columnCounter++;
+			x[i] = cplex.numVar(0,1,"x"+columnCounter);
 		}
 	}
 	
 	/**
-	 * Add the vars for the given patterns
+	 * Add the var for the last pattern as a column: its cost in the objective, and 1 in the
+	 * constraint of each of its pieces. Nothing else in the model is rebuilt.
 	 * @throws IloException
 	 */
 	private void addVariable(Pattern p) throws IloException
 	{
-		int i = x.keySet().size() + 1;		// start counting from the last index
-		IloNumVar var = cplex.numVar(0,1,"x"+i);
-		x.put(p, var);			
+		columnCounter++;
+		IloColumn column = cplex.column(objective, getColumnCost());
+		for (int j = 0; j < p.size(); j++) {
+			column = column.and(cplex.column(constraints[position(p.getPiece(j))], 1));
+		}
+		int i = patterns.size() - 1;
+		if (i == x.length) {
+			x = Arrays.copyOf(x, 2 * x.length);
+		}
+		x[i] = cplex.numVar(column, 0, 1, "x"+columnCounter);
 	}
 	
 	/**
@@ -169,101 +380,97 @@ public class ModelCG{
 	 */
 	private void addObjective() throws IloException
 	{
-		IloNumExpr obj = cplex.constant(0);
+		IloLinearNumExpr obj = cplex.linearNumExpr();
 		// add the vars corresponding to the patterns (y_k)
-		for (Pattern r : patterns) { 
-			{
-				 obj = cplex.sum(obj, x.get(r));	
-			}
+		for (int i = 0; i < patterns.size(); i++) {
+			obj.addTerm(getColumnCost(), x[i]);
 		}
 		objective = cplex.addMinimize(obj);
 	}
 	
 	/**
-	 * Regenerate the objective expression for the model. Necessary if new vars added.
+	 * Adds the constraints that make sure each Piece is cut. Save the constraints by the position of the piece
 	 * @throws IloException
 	 */
-	private void regenerateObjective() throws IloException {
-		cplex.remove(objective);
-		IloNumExpr obj = cplex.constant(0);
-		// add the vars corresponding to the patterns (y_k): any new patterns are included now
-		for (Pattern r : patterns) { 
-			{
-				 obj = cplex.sum(obj, x.get(r));	
+	private void addDoPiecesConstraints() throws IloException
+	{
+		// one pass over the patterns: the var of a pattern enters the constraints of its pieces
+		IloLinearNumExpr[] lhs = new IloLinearNumExpr[pieces.size()];
+		for (int i = 0; i < lhs.length; i++) {
+			lhs[i] = cplex.linearNumExpr();
+		}
+		for (int k = 0; k < patterns.size(); k++) {
+			Pattern r = patterns.get(k);
+			for (int j = 0; j < r.size(); j++) {
+				lhs[position(r.getPiece(j))].addTerm(1, x[k]);
 			}
 		}
-		objective = cplex.addMinimize(obj);
+		for (int j = 0; j < pieces.size(); j++) {
+			// add the constraint: rhs=1 because pieces of the same length are uniquely defined
+			constraints[j] = cplex.addGe(lhs[j], 1,"cover"+pieces.get(j).getIndex());
+		}
 	}
 	
 	/**
-	 * Adds the constraints that make sure each Piece is cut. Save the constraints in a map
-	 * @throws IloException
+	 * Position of a piece of the order
+	 * @throws IllegalArgumentException if the piece is not in the order
 	 */
-	private void addDoPiecesConstraints() throws IloException
-	{
-		// add a constraint for each piece
-		for (Piece p : pieces) {
-			IloNumExpr lhs = cplex.constant(0);
-			// sum over the patterns
-			for (Pattern r : patterns) {
-				if (r.getPieces().contains(p))
-				{
-					lhs = cplex.sum(lhs, x.get(r));					
-				}
-			}
-			// add the constraint: rhs=1 because pieces of the same length are uniquely defined
-			IloRange currentConstr = cplex.addGe(lhs, 1,"cover"+p.getIndex());
-			// add to the map
-			constraints.put(p, currentConstr);
+	private int position(Piece p) {
+		Integer i = positions.get(p);
+		if (i == null) {
+			throw new IllegalArgumentException("Piece " + p + " is not in the order");
 		}
+		return i;
 	}
 	
-	private void changeDoPiecesConstraints(List<Piece> changes) throws IloException {
-		for (Piece p : changes) {
-			IloRange current = constraints.get(p);
-			cplex.remove(current);
-			// build the new constraint
-			IloNumExpr lhs = cplex.constant(0);
-			// sum over the patterns: the new pattern is included now
-			for (Pattern r : patterns) {
-				if (r.getPieces().contains(p))
-				{
-					lhs = cplex.sum(lhs, x.get(r));					
-				}
-			}
-			// add the constraint: rhs=1 because pieces of the same length are uniquely defined
-			IloRange currentConstr = cplex.addGe(lhs, 1,"cover"+p.getIndex());		
-			// add to the map
-			constraints.put(p, currentConstr);
-		}
+	@Override
+	protected int getColumnCount() {
+		return patterns.size();
 	}
-
-
-	// methods to retrieve information about the solution
+	
+	@Override
+	protected int getRowCount() {
+		return pieces.size();
+	}
+	
+	@Override
+	protected void addColumn(Pattern p) throws IloException {
+		patterns.add(p);
+		addVariable(p);
+	}
+	
 	/**
-	 * Return the objective value, as a double
-	 * @return
-	 * @throws IloException
+	 * Every column costs a rod, with its share of the waste
 	 */
-	public double getObjective() throws IloException {
-		return cplex.getObjValue();
+	@Override
+	protected double getColumnCost() {
+		return costs.getColumnCost(ROD_LENGTH);
+	}
+	
+	@Override
+	protected boolean isColumnObjective() {
+		return costs.isRodsOnly();
 	}
 	
+	// methods to retrieve information about the solution
 	/**
 	 * Returns a map from the used patterns to the pieces which are cut from this pattern.
 	 * @return
 	 * @throws IloException 
 	 * @throws UnknownObjectException 
 	 */
+	@Override
 	public List<Pattern> getPatterns() throws UnknownObjectException, IloException {
-		List<Pattern> result = new ArrayList<Pattern>();
-		for (Pattern r : patterns) {
-			double val = cplex.getValue(x.get(r));
-			if (val > 0.01) {
-				// put the used patterns in a list				
-				result.add(r);
-			}
-		}
-		return result;
+		return getSolution().toPatterns(patterns);
+	}
+	
+	/**
+	 * Returns the used patterns as positions in the list of patterns, read with one call to CPLEX.
+	 * Fractional values are rounded up.
+	 * @return
+	 * @throws IloException
+	 */
+	public PatternSolution getSolution() throws IloException {
+		return PatternSolution.of(cplex.getValues(x, 0, patterns.size()));
 	}
 }
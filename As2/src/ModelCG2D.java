@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import ilog.concert.IloColumn;
+import ilog.concert.IloException;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
+import ilog.concert.IloObjective;
+import ilog.concert.IloRange;
+import ilog.cplex.IloCplex;
+
+/**
+ * Column generation for two-stage guillotine cutting of sheets, the two-dimensional counterpart of ModelCG.
+ * The master is the model of Gilmore and Gomory: a var per pattern for how often it is cut, and a row per
+ * item that asks for its demand. Columns are priced exactly by the StripPricer. The loop is the one of
+ * ModelCG, in ColumnGeneration: the results and the listener get the sheets, one Pattern2D per sheet,
+ * and their objective is the number of sheets.
+ */
+public class ModelCG2D extends ColumnGeneration<Pattern2D> {
+
+	private final List<Item2D> items;
+	private final Sheet sheet;
+	private final List<Pattern2D> patterns;
+	// variables, in the order of the patterns; the array grows with the patterns
+	private IloNumVar[] x;
+	// constraints, in the order of the items
+	private IloRange[] constraints;
+	private IloObjective objective;
+	private StripPricer pricer;
+
+	/**
+	 * Constructor: starts with a pattern per item that only cuts copies of that item
+	 * @param items
+	 * @param sheet
+	 * @throws IloException
+	 */
+	public ModelCG2D(List<Item2D> items, Sheet sheet) throws IloException
+	{
+		// sorted by height, for the pricer; the model works in this order
+		this.items = new ArrayList<Item2D>(items);
+		Collections.sort(this.items, new Comparator<Item2D>() {
+			@Override
+			public int compare(Item2D i1, Item2D i2) {
+				return i1.getHeight() - i2.getHeight();
+			}
+		});
+		this.sheet = sheet;
+		this.patterns = new ArrayList<Pattern2D>();
+		for (Item2D item : this.items) {
+			if (!sheet.fits(item)) {
+				throw new IllegalArgumentException("Item " + item + " does not fit on the sheet");
+			}
+		}
+		x = new IloNumVar[Math.max(16, 2 * this.items.size())];
+
+		objective = cplex.addMinimize(cplex.linearNumExpr());
+		addDemandConstraints();
+		addInitialPatterns();
+		pricer = new StripPricer(this.items, sheet);
+		cplex.setOut(null);
+	}
+
+	/**
+	 * Solve the LP relaxation with column generation, for a given number of iterations.
+	 * @throws IloException
+	 */
+	public void solveLPColGen(int iterations) throws IloException
+	{
+		solveLPColGen(iterations, new SolveOptions(), SolveListener.<Pattern2D>none());
+	}
+
+	/**
+	 * Solve the LP relaxation with column generation, for at most the given number of iterations and within
+	 * the limits of the options. Every iteration adds the best pattern of the pricer. After every master
+	 * solve the LP solution is rounded up, which is a feasible solution; improvements of it and of the lower
+	 * bound are passed to the listener.
+	 * @return the best rounded sheets and the best bound
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern2D> solveLPColGen(int iterations, SolveOptions options, SolveListener<Pattern2D> listener) throws IloException
+	{
+		return generate(iterations, options, listener, pricer);
+	}
+
+	/**
+	 * Solves the integer model over the generated patterns (price-and-branch), within the limits of the
+	 * options. The bound of this model only holds for the generated patterns, so the result keeps the
+	 * bound of the column generation.
+	 * @param options
+	 * @param listener gets the sheets of the solution
+	 * @return
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern2D> solveIP(SolveOptions options, SolveListener<Pattern2D> listener) throws IloException
+	{
+		for (int k = 0; k < patterns.size(); k++) {
+			cplex.add(cplex.conversion(x[k], IloNumVarType.Int));
+		}
+		IloCplex.Aborter aborter = options.apply(cplex);
+		try {
+			if (!options.isStopped()) {
+				this.solve();
+			}
+		} finally {
+			options.release(cplex, aborter);
+		}
+		double objective = Double.POSITIVE_INFINITY;
+		List<Pattern2D> sheets = null;
+		if (cplex.isPrimalFeasible()) {
+			sheets = getPatterns();
+			objective = sheets.size();
+			listener.improvedSolution(objective, sheets);
+		}
+		return SolveResult.of(objective, getBound(), sheets, options, SolveResult.Status.LP_OPTIMAL);
+	}
+
+	/**
+	 * Adds a row per item: at least its demand has to be cut
+	 * @throws IloException
+	 */
+	private void addDemandConstraints() throws IloException
+	{
+		constraints = new IloRange[items.size()];
+		for (int i = 0; i < constraints.length; i++) {
+			Item2D item = items.get(i);
+			constraints[i] = cplex.addRange(item.getDemand(), Double.MAX_VALUE, "demand" + item.getIndex());
+		}
+	}
+
+	/**
+	 * A pattern per item with as many copies of it as fit, up to its demand, so the master is feasible
+	 * @throws IloException
+	 */
+	private void addInitialPatterns() throws IloException
+	{
+		for (int i = 0; i < items.size(); i++) {
+			Item2D item = items.get(i);
+			int perStrip = Math.min(sheet.getWidth() / item.getWidth(), item.getDemand());
+			int strips = Math.min(sheet.getHeight() / item.getHeight(), (item.getDemand() + perStrip - 1) / perStrip);
+			int[] heights = new int[strips];
+			int[][] counts = new int[strips][items.size()];
+			for (int s = 0; s < strips; s++) {
+				heights[s] = item.getHeight();
+				counts[s][i] = perStrip;
+			}
+			addPattern(new Pattern2D(patterns.size() + 1, heights, counts));
+		}
+	}
+
+	@Override
+	protected int getColumnCount() {
+		return patterns.size();
+	}
+
+	@Override
+	protected int getRowCount() {
+		return items.size();
+	}
+
+	@Override
+	protected void addColumn(Pattern2D p) throws IloException {
+		addPattern(p);
+	}
+
+	/**
+	 * Returns the duals, in the order of the items, read with one call to CPLEX.
+	 * @return
+	 * @throws IloException
+	 */
+	@Override
+	public double[] getDuals() throws IloException {
+		return cplex.getDuals(constraints);
+	}
+
+	/**
+	 * Adds the var of the pattern as a column: coefficient 1 in the objective, and its number of copies
+	 * in the row of every item
+	 * @throws IloException
+	 */
+	private void addPattern(Pattern2D p) throws IloException
+	{
+		patterns.add(p);
+		IloColumn column = cplex.column(objective, 1);
+		for (int i = 0; i < items.size(); i++) {
+			if (p.getCount(i) > 0) {
+				column = column.and(cplex.column(constraints[i], p.getCount(i)));
+			}
+		}
+		int k = patterns.size() - 1;
+		if (k == x.length) {
+			x = Arrays.copyOf(x, 2 * x.length);
+		}
+		x[k] = cplex.numVar(column, 0, Double.MAX_VALUE, "x" + patterns.size());
+	}
+
+	// methods to retrieve information about the solution
+	/**
+	 * Returns the patterns of the solution, each as often as it is cut. The values are rounded up.
+	 * @return
+	 * @throws IloException
+	 */
+	@Override
+	public List<Pattern2D> getPatterns() throws IloException {
+		PatternSolution solution = PatternSolution.of(cplex.getValues(x, 0, patterns.size()));
+		List<Pattern2D> result = new ArrayList<Pattern2D>(solution.getRods());
+		for (int k = 0; k < solution.size(); k++) {
+			for (int m = 0; m < solution.getMultiplicity(k); m++) {
+				result.add(patterns.get(solution.getId(k)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The items in the order of the model, which is the order of the counts in the patterns
+	 * @return
+	 */
+	public List<Item2D> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+}
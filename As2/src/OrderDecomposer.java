@@ -0,0 +1,322 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import ilog.concert.IloException;
+
+/**
+ * Solves large orders by splitting them into sub-orders that are solved independently and in parallel
+ * with the CuttingStockSolver, and stitching the rods together. Every sub-order gets the same time
+ * limit and cost model, through the shared options. A repair pass then takes the least filled rods of
+ * the stitched plan, and the pieces of sub-orders that failed, and repacks them as one more order; the
+ * repacked rods are kept when they are fewer.
+ *
+ * Two splits are offered:
+ * LENGTH_CLASS deals the pieces, sorted by length, over the sub-orders like cards, so every sub-order
+ * gets a share of every length class and the sub-orders look like small copies of the order.
+ * LP_GUIDED first runs a few iterations of column generation on the whole order, and fills the
+ * sub-orders one after the other with the pieces of the patterns of its rounded LP solution, so pieces
+ * that the LP cuts together stay together.
+ *
+ * The loss of the decomposition is reported against the bound of the whole order: the LowerBounds,
+ * and for LP_GUIDED also the bound of the column generation.
+ * Every solve with CPLEX, of a sub-order, of the LP of the split or of the repair, goes through
+ * solveWithPermit or takes a permit of the semaphore itself, so a semaphore that is shared with other
+ * solves bounds the number of CPLEX solves that run at once.
+ * The sub-orders and the LP of the split share the Piece objects of the order. This is safe because the
+ * models keep the positions of the pieces themselves and never write to a piece.
+ */
+public class OrderDecomposer {
+
+	public enum Split {LENGTH_CLASS, LP_GUIDED}
+
+	/**
+	 * Default number of pieces per sub-order
+	 */
+	public static final int DEFAULT_PART_SIZE = 500;
+	// iterations of column generation on the whole order for the LP_GUIDED split
+	private static final int LP_ITERATIONS = 25;
+	// least filled rods per sub-order that are repacked by the repair
+	private static final int REPAIR_RODS_PER_PART = 3;
+
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final int partSize;
+	private final Split split;
+
+	/**
+	 * Constructor for a decomposer that solves as many sub-orders at once as the executor runs
+	 * @param executor runs the sub-orders; a pool with a thread per core gives the best scaling
+	 * @param partSize number of pieces per sub-order
+	 * @param split
+	 */
+	public OrderDecomposer(ExecutorService executor, int partSize, Split split) {
+		this(executor, new Semaphore(Integer.MAX_VALUE), partSize, split);
+	}
+
+	/**
+	 * Constructor
+	 * @param executor runs the sub-orders
+	 * @param permits a permit is taken for every CPLEX solve
+	 * @param partSize number of pieces per sub-order
+	 * @param split
+	 */
+	public OrderDecomposer(ExecutorService executor, Semaphore permits, int partSize, Split split) {
+		if (partSize < 1) {
+			throw new IllegalArgumentException("The part size must be positive");
+		}
+		this.executor = executor;
+		this.permits = permits;
+		this.partSize = partSize;
+		this.split = split;
+	}
+
+	/**
+	 * Solve the order, using the cache like CuttingStockSolver: a cached optimal solution is returned at
+	 * once, and the stitched solution is added to the cache.
+	 * @param pieces
+	 * @param rodLength
+	 * @param options
+	 * @param listener
+	 * @param cache
+	 * @return
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern> solve(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener, SolutionCache cache) throws IloException {
+		if (!options.getCostModel().isRodsOnly()) {
+			return solve(pieces, rodLength, options, listener);
+		}
+		SolveResult<Pattern> cached = cache.get(pieces, rodLength);
+		if (cached != null) {
+			listener.improvedSolution(cached.getObjective(), cached.getPatterns());
+			listener.improvedBound(cached.getBound());
+			return cached;
+		}
+		SolveResult<Pattern> result = solve(pieces, rodLength, options, listener);
+		cache.put(pieces, rodLength, result, new ArrayList<Pattern>());
+		return result;
+	}
+
+	/**
+	 * Solve the order within the limits of the options. The listener gets the bound of the whole order
+	 * and the stitched solution, after the repair.
+	 * @param pieces
+	 * @param rodLength
+	 * @param options
+	 * @param listener
+	 * @return the stitched solution, with the bound of the whole order
+	 * @throws IloException
+	 */
+	public SolveResult<Pattern> solve(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener) throws IloException {
+		options.start();
+		int parts = (pieces.size() + partSize - 1) / partSize;
+		if (parts <= 1) {
+			return solveWithPermit(pieces, rodLength, options, listener);
+		}
+		double bound = LowerBounds.best(pieces, rodLength);
+		listener.improvedBound(bound);
+		List<List<Piece>> subOrders;
+		if (split == Split.LP_GUIDED) {
+			subOrders = new ArrayList<List<Piece>>();
+			double lpBound;
+			permits.acquireUninterruptibly();
+			try {
+				lpBound = splitByLP(pieces, rodLength, parts, options, subOrders);
+			} finally {
+				permits.release();
+			}
+			if (Math.ceil(lpBound - 1e-9) > bound) {
+				bound = Math.ceil(lpBound - 1e-9);
+				listener.improvedBound(bound);
+			}
+		} else {
+			subOrders = splitByLength(pieces, parts);
+		}
+
+		// solve the sub-orders in parallel
+		List<Future<SolveResult<Pattern>>> futures = new ArrayList<Future<SolveResult<Pattern>>>();
+		for (final List<Piece> subOrder : subOrders) {
+			final int length = rodLength;
+			final SolveOptions shared = options;
+			futures.add(executor.submit(new Callable<SolveResult<Pattern>>() {
+				@Override
+				public SolveResult<Pattern> call() throws Exception {
+					return solveWithPermit(subOrder, length, shared, SolveListener.<Pattern>none());
+				}
+			}));
+		}
+		List<Pattern> rods = new ArrayList<Pattern>();
+		List<Piece> failed = new ArrayList<Piece>();
+		int partRods = 0;
+		for (int k = 0; k < futures.size(); k++) {
+			SolveResult<Pattern> result;
+			try {
+				result = get(futures.get(k), options);
+			} catch (IloException e) {
+				// the other sub-orders are of no use any more
+				options.cancel();
+				for (Future<SolveResult<Pattern>> future : futures) {
+					future.cancel(true);
+				}
+				throw e;
+			}
+			if (result == null || result.getStatus() == SolveResult.Status.NO_SOLUTION) {
+				failed.addAll(subOrders.get(k));
+			} else {
+				rods.addAll(result.getPatterns());
+				partRods = partRods + result.getPatterns().size();
+			}
+		}
+
+		// repair: repack the least filled rods together with the pieces of failed sub-orders
+		int repairs = Math.min(rods.size(), REPAIR_RODS_PER_PART * subOrders.size());
+		Collections.sort(rods, new Comparator<Pattern>() {
+			@Override
+			public int compare(Pattern p1, Pattern p2) {
+				return p1.totalLength() - p2.totalLength();
+			}
+		});
+		List<Piece> residual = new ArrayList<Piece>(failed);
+		for (int r = 0; r < repairs; r++) {
+			residual.addAll(rods.get(r).getPieces());
+		}
+		List<Pattern> repacked = repack(residual, rodLength, options);
+		if (!failed.isEmpty() || repacked.size() < repairs) {
+			rods = new ArrayList<Pattern>(rods.subList(repairs, rods.size()));
+			rods.addAll(repacked);
+		}
+		// one index per rod, in the order of the plan
+		List<Pattern> result = new ArrayList<Pattern>(rods.size());
+		for (Pattern p : rods) {
+			result.add(new Pattern(result.size() + 1, p.getPieces()));
+		}
+		listener.improvedSolution(result.size(), result);
+		Log.info("Decomposition into {} sub-orders ({}): {} rods, {} from the sub-orders, {} pieces of failed sub-orders; bound {}, loss {} rods ({}%)",
+				subOrders.size(), split, result.size(), partRods, failed.size(),
+				bound, result.size() - bound, 100 * (result.size() - bound) / bound);
+		return SolveResult.of(result.size(), bound, result, options, SolveResult.Status.DECOMPOSED);
+	}
+
+	/**
+	 * Deals the pieces, longest first, over the parts: back and forth, so the total lengths stay even
+	 */
+	private static List<List<Piece>> splitByLength(List<Piece> pieces, int parts) {
+		List<Piece> sorted = new ArrayList<Piece>(pieces);
+		Collections.sort(sorted, new Comparator<Piece>() {
+			@Override
+			public int compare(Piece p1, Piece p2) {
+				return p2.getLength() - p1.getLength();
+			}
+		});
+		List<List<Piece>> result = new ArrayList<List<Piece>>();
+		for (int k = 0; k < parts; k++) {
+			result.add(new ArrayList<Piece>());
+		}
+		for (int i = 0; i < sorted.size(); i++) {
+			int round = i / parts;
+			int k = i % parts;
+			result.get(round % 2 == 0 ? k : parts - 1 - k).add(sorted.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Fills the parts one after the other with the pieces of the patterns of the rounded LP solution
+	 * @return the bound of the column generation, or -infinity
+	 */
+	private double splitByLP(List<Piece> pieces, int rodLength, int parts, SolveOptions options, List<List<Piece>> result) throws IloException {
+		ModelCG cg = new ModelCG(Heuristics.firstFitDecreasing(pieces, rodLength), new ArrayList<Piece>(pieces), rodLength, options.getCostModel());
+		SolveResult<Pattern> lp;
+		List<Pattern> patterns;
+		try {
+			lp = cg.solveLPColGen(LP_ITERATIONS, options, SolveListener.<Pattern>none());
+			patterns = lp.getPatterns();
+		} finally {
+			cg.end();
+		}
+		// a piece goes with the first pattern that holds it
+		Map<Piece, Boolean> assigned = new IdentityHashMap<Piece, Boolean>();
+		int size = (pieces.size() + parts - 1) / parts;
+		List<Piece> part = new ArrayList<Piece>();
+		for (Pattern p : patterns) {
+			for (Piece piece : p.getPieces()) {
+				if (assigned.put(piece, Boolean.TRUE) == null) {
+					part.add(piece);
+				}
+			}
+			if (part.size() >= size) {
+				result.add(part);
+				part = new ArrayList<Piece>();
+			}
+		}
+		// pieces the LP did not cover, when it was stopped early
+		for (Piece piece : pieces) {
+			if (!assigned.containsKey(piece)) {
+				part.add(piece);
+				if (part.size() >= size) {
+					result.add(part);
+					part = new ArrayList<Piece>();
+				}
+			}
+		}
+		if (!part.isEmpty()) {
+			result.add(part);
+		}
+		return lp.getBound();
+	}
+
+	/**
+	 * Solves the residual pieces as an order of their own
+	 */
+	private List<Pattern> repack(List<Piece> residual, int rodLength, SolveOptions options) throws IloException {
+		if (residual.isEmpty()) {
+			return new ArrayList<Pattern>();
+		}
+		SolveResult<Pattern> result = solveWithPermit(residual, rodLength, options, SolveListener.<Pattern>none());
+		if (result.getStatus() == SolveResult.Status.NO_SOLUTION) {
+			return Heuristics.firstFitDecreasing(residual, rodLength);
+		}
+		return result.getPatterns();
+	}
+
+	/**
+	 * Solves an order with the CuttingStockSolver while holding a permit
+	 */
+	private SolveResult<Pattern> solveWithPermit(List<Piece> pieces, int rodLength, SolveOptions options, SolveListener<Pattern> listener) throws IloException {
+		permits.acquireUninterruptibly();
+		try {
+			return CuttingStockSolver.solve(pieces, rodLength, options, listener);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * The result of a sub-order, or null if it failed. When interrupted the options are cancelled, so the
+	 * other sub-orders return quickly.
+	 */
+	private static SolveResult<Pattern> get(Future<SolveResult<Pattern>> future, SolveOptions options) throws IloException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			options.cancel();
+			future.cancel(true);
+			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IloException) {
+				throw (IloException) e.getCause();
+			}
+			Log.warn("Sub-order failed: {}", e.getCause());
+			return null;
+		}
+	}
+}
@@ -1,45 +1,216 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
- * Pattern object for the Cutting Stock problem. Contains a list which pieces are in this pattern.
+ * Pattern object for the Cutting Stock problem. Contains which pieces are in this pattern.
+ * A pattern is immutable: the pieces are kept in a sorted array (by index, then length), and the total
+ * length and the hash are computed once. Two patterns are equal when they hold the same pieces; the
+ * index is only a label and does not take part.
  * @author Peter de Voogd and Reinier van Uden
  *
  */
 public class Pattern {
-	
-	private List<Piece> pieces;
-	private int index;
-	
+
+	private static final Piece[] NO_PIECES = new Piece[0];
+	// the order of the pieces in a pattern
+	private static final Comparator<Piece> ORDER = new Comparator<Piece>() {
+		@Override
+		public int compare(Piece p1, Piece p2) {
+			if (p1.getIndex() != p2.getIndex()) {
+				return p1.getIndex() < p2.getIndex() ? -1 : 1;
+			}
+			return p1.getLength() < p2.getLength() ? -1 : (p1.getLength() == p2.getLength() ? 0 : 1);
+		}
+	};
+
+	private final Piece[] pieces;
+	private final int index;
+	private final int length;
+	private final int hash;
+
 	// constructor
 	public Pattern(int index, List<Piece> pieces) {
+		this(index, pieces.toArray(NO_PIECES), true);
+	}
+
+	/**
+	 * Constructor for an array that is owned by the pattern from now on
+	 */
+	private Pattern(int index, Piece[] pieces, boolean sort) {
+		if (sort) {
+			Arrays.sort(pieces, ORDER);
+		}
 		this.index = index;
 		this.pieces = pieces;
+		int total = 0;
+		int h = 1;
+		for (Piece p : pieces) {
+			total = total + p.getLength();
+			h = 31 * h + p.getIndex();
+		}
+		this.length = total;
+		this.hash = h;
 	}
-	
+
 	// getters
+	/**
+	 * The pieces, sorted by index; the list cannot be changed
+	 * @return
+	 */
 	public List<Piece> getPieces() {
-		return this.pieces;
+		return Collections.unmodifiableList(Arrays.asList(pieces));
 	}
-	
+
 	public int getIndex() {
 		return this.index;
 	}
-	
+
+	public int size() {
+		return pieces.length;
+	}
+
+	public Piece getPiece(int i) {
+		return pieces[i];
+	}
+
 	public int totalLength() {
-		int result = 0;
-		for (Piece p : pieces) {
-			result = result + p.getLength();
+		return length;
+	}
+
+	/**
+	 * The length that is left of a rod of the given length
+	 * @param rodLength
+	 * @return
+	 */
+	public int waste(int rodLength) {
+		return rodLength - length;
+	}
+
+	/**
+	 * True if the pattern holds this piece
+	 * @param p
+	 * @return
+	 */
+	public boolean contains(Piece p) {
+		return position(p) >= 0;
+	}
+
+	/**
+	 * True if the pattern holds all pieces of the other pattern
+	 * @param other
+	 * @return
+	 */
+	public boolean containsAll(Pattern other) {
+		if (other.pieces.length > pieces.length || other.length > length) {
+			return false;
 		}
-		return result;
+		for (Piece p : other.pieces) {
+			if (position(p) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The pattern with one more piece
+	 * @param index of the new pattern
+	 * @param p
+	 * @return
+	 */
+	public Pattern with(int index, Piece p) {
+		Piece[] result = new Piece[pieces.length + 1];
+		int i = 0;
+		while (i < pieces.length && ORDER.compare(pieces[i], p) <= 0) {
+			result[i] = pieces[i];
+			i++;
+		}
+		result[i] = p;
+		System.arraycopy(pieces, i, result, i + 1, pieces.length - i);
+		return new Pattern(index, result, false);
+	}
+
+	/**
+	 * The pattern without the given piece, with the same index; this pattern if it does not hold the piece
+	 * @param p
+	 * @return
+	 */
+	public Pattern without(Piece p) {
+		int i = position(p);
+		if (i < 0) {
+			return this;
+		}
+		Piece[] result = new Piece[pieces.length - 1];
+		System.arraycopy(pieces, 0, result, 0, i);
+		System.arraycopy(pieces, i + 1, result, i, pieces.length - i - 1);
+		return new Pattern(index, result, false);
+	}
+
+	/**
+	 * Position of the piece itself in the sorted array, or -1
+	 */
+	private int position(Piece p) {
+		int lo = 0;
+		int hi = pieces.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ORDER.compare(pieces[mid], p) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		// pieces of different orders can have the same index and length
+		for (int i = lo; i < pieces.length && ORDER.compare(pieces[i], p) == 0; i++) {
+			if (pieces[i] == p) {
+				return i;
+			}
+		}
+		return -1;
 	}
-	
-	// print method
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Pattern)) {
+			return false;
+		}
+		Pattern other = (Pattern) o;
+		if (hash != other.hash || length != other.length || pieces.length != other.pieces.length) {
+			return false;
+		}
+		for (int i = 0; i < pieces.length; i++) {
+			if (pieces[i] != other.pieces[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	// print methods
 	public String toString() {
-		String result = index + "[";
+		return appendTo(new StringBuilder(4 * pieces.length + 8)).toString();
+	}
+
+	/**
+	 * Appends the same text as toString to the given builder, without creating intermediate strings.
+	 * @param sb
+	 * @return the builder
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
+		sb.append(index).append('[');
 		for (Piece p : pieces) {
-			result = result + p.getIndex() + ",";
+			sb.append(p.getIndex()).append(',');
 		}
-		result = result + "]";
-		return result;
+		return sb.append(']');
 	}
 }
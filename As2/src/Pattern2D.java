@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A two-stage guillotine pattern: the sheet is cut into horizontal strips, and every strip into items
+ * side by side. A strip is as high as its height class; items lower than the strip are trimmed.
+ * Item counts are indexed by the position of the item in the list of the model. Like Pattern the
+ * pattern is immutable, and two patterns are equal when they cut the same items; the index is a label.
+ */
+public class Pattern2D {
+
+	private final int index;
+	private final int[] stripHeights;
+	private final int[][] stripCounts;
+	private final int[] counts;
+	private final int hash;
+
+	/**
+	 * Constructor
+	 * @param index
+	 * @param stripHeights height of every strip
+	 * @param stripCounts per strip, the number of copies of every item
+	 */
+	public Pattern2D(int index, int[] stripHeights, int[][] stripCounts) {
+		this.index = index;
+		this.stripHeights = stripHeights.clone();
+		this.stripCounts = new int[stripCounts.length][];
+		int items = stripCounts.length == 0 ? 0 : stripCounts[0].length;
+		this.counts = new int[items];
+		for (int s = 0; s < stripCounts.length; s++) {
+			this.stripCounts[s] = stripCounts[s].clone();
+			for (int i = 0; i < items; i++) {
+				counts[i] = counts[i] + stripCounts[s][i];
+			}
+		}
+		this.hash = Arrays.hashCode(counts);
+	}
+
+	// getters
+	public int getIndex() {
+		return this.index;
+	}
+
+	public int getStrips() {
+		return stripHeights.length;
+	}
+
+	public int getStripHeight(int strip) {
+		return stripHeights[strip];
+	}
+
+	public int getCount(int strip, int item) {
+		return stripCounts[strip][item];
+	}
+
+	/**
+	 * Number of copies of the item in the whole pattern
+	 * @param item position of the item
+	 * @return
+	 */
+	public int getCount(int item) {
+		return item < counts.length ? counts[item] : 0;
+	}
+
+	/**
+	 * Area of the sheet that is not used by items
+	 * @param sheet
+	 * @param items the items of the model
+	 * @return
+	 */
+	public long waste(Sheet sheet, List<Item2D> items) {
+		long used = 0;
+		for (int i = 0; i < counts.length; i++) {
+			used = used + (long) counts[i] * items.get(i).getWidth() * items.get(i).getHeight();
+		}
+		return (long) sheet.getWidth() * sheet.getHeight() - used;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Pattern2D)) {
+			return false;
+		}
+		Pattern2D other = (Pattern2D) o;
+		return hash == other.hash && Arrays.equals(counts, other.counts);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	// print methods
+	public String toString() {
+		return appendTo(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the same text as toString to the given builder: per strip its height and the item positions
+	 * @param sb
+	 * @return the builder
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
+		sb.append(index).append('[');
+		for (int s = 0; s < stripHeights.length; s++) {
+			sb.append(stripHeights[s]).append(':');
+			for (int i = 0; i < stripCounts[s].length; i++) {
+				for (int c = 0; c < stripCounts[s][i]; c++) {
+					sb.append(i).append(',');
+				}
+			}
+			sb.append(';');
+		}
+		return sb.append(']');
+	}
+}
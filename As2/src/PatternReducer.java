@@ -0,0 +1,299 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Post-optimization that lowers the number of distinct patterns (saw setups) of a solution without using
+ * more rods. Rods that cut the same lengths form one pattern with a multiplicity. Then, as in KOMBI of
+ * Foerster and Wascher, two patterns A and B used a and b times are replaced by one pattern C used a + b
+ * times, with C(l) = ceil((a * A(l) + b * B(l)) / (a + b)) pieces of every length l, whenever C fits on the
+ * rod: C cuts every length at least as often as A and B did together. A pass tries every pair of the P
+ * distinct patterns once, the least used first, and goes on scanning after a merge; passes are repeated
+ * until one merges nothing. A pass costs O(P^2) merge attempts and every pass but the last merges, so the
+ * worst case is O(P^3); in practice a few passes do. No model is used, and the reduction stops early when
+ * the options are stopped.
+ */
+public class PatternReducer {
+
+	/**
+	 * A cutting plan: distinct patterns as lengths, how often each is cut, and the rods with their pieces
+	 */
+	public static class Plan {
+		private final List<int[]> layouts;
+		private final List<Integer> multiplicities;
+		private final List<Pattern> rods;
+
+		Plan(List<int[]> layouts, List<Integer> multiplicities, List<Pattern> rods) {
+			this.layouts = layouts;
+			this.multiplicities = multiplicities;
+			this.rods = rods;
+		}
+
+		/**
+		 * The lengths of the k-th distinct pattern, sorted. Rods of this pattern may hold fewer pieces
+		 * when lengths are cut more often than they are ordered.
+		 * @param k
+		 * @return
+		 */
+		public int[] getLayout(int k) {
+			return layouts.get(k).clone();
+		}
+
+		public int getMultiplicity(int k) {
+			return multiplicities.get(k);
+		}
+
+		/**
+		 * One pattern per rod, with the pieces it gives
+		 * @return
+		 */
+		public List<Pattern> getRods() {
+			return rods;
+		}
+
+		public int getSetups() {
+			return layouts.size();
+		}
+	}
+
+	/**
+	 * The sorted lengths of a pattern, as a key
+	 */
+	private static final class Layout {
+		private final int[] lengths;
+		private final int hash;
+
+		Layout(int[] lengths) {
+			this.lengths = lengths;
+			this.hash = Arrays.hashCode(lengths);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Layout && Arrays.equals(lengths, ((Layout) o).lengths);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Number of distinct length multisets in a list of rods
+	 * @param rods
+	 * @return
+	 */
+	public static int setups(List<Pattern> rods) {
+		Set<Layout> distinct = new HashSet<Layout>();
+		for (Pattern p : rods) {
+			distinct.add(new Layout(lengths(p)));
+		}
+		return distinct.size();
+	}
+
+	/**
+	 * Numbers the distinct length multisets of the columns of a store
+	 * @param columns
+	 * @return for every column, the number of its length multiset; numbers start at 0 and are dense
+	 */
+	static int[] layoutIds(ColumnStore columns) {
+		Map<Layout, Integer> ids = new HashMap<Layout, Integer>();
+		List<Piece> pieces = columns.getPieces();
+		ColumnStore.View column = columns.view();
+		int[] result = new int[columns.size()];
+		for (int k = 0; k < result.length; k++) {
+			column.moveTo(k);
+			int[] lengths = new int[column.getPieceCount()];
+			int n = 0;
+			for (int i = column.nextPiece(0); i >= 0; i = column.nextPiece(i + 1)) {
+				lengths[n] = pieces.get(i).getLength();
+				n++;
+			}
+			Arrays.sort(lengths);
+			Layout layout = new Layout(lengths);
+			Integer id = ids.get(layout);
+			if (id == null) {
+				id = ids.size();
+				ids.put(layout, id);
+			}
+			result[k] = id;
+		}
+		return result;
+	}
+
+	/**
+	 * Merges the patterns of a solution
+	 * @param rods one pattern per rod; together they cut every piece
+	 * @param pieces the pieces of the order
+	 * @param rodLength
+	 * @return the plan, with at most as many rods and patterns as the solution
+	 */
+	public static Plan reduce(List<Pattern> rods, List<Piece> pieces, int rodLength) {
+		return reduce(rods, pieces, rodLength, new SolveOptions());
+	}
+
+	/**
+	 * Merges the patterns of a solution, as long as the options are not stopped
+	 * @param rods one pattern per rod; together they cut every piece
+	 * @param pieces the pieces of the order
+	 * @param rodLength
+	 * @param options
+	 * @return the plan, with at most as many rods and patterns as the solution
+	 */
+	public static Plan reduce(List<Pattern> rods, List<Piece> pieces, int rodLength, SolveOptions options) {
+		// group the rods by their lengths
+		Map<Layout, Integer> groups = new LinkedHashMap<Layout, Integer>();
+		for (Pattern p : rods) {
+			Layout layout = new Layout(lengths(p));
+			Integer count = groups.get(layout);
+			groups.put(layout, count == null ? 1 : count + 1);
+		}
+		List<int[]> layouts = new ArrayList<int[]>();
+		List<Integer> multiplicities = new ArrayList<Integer>();
+		for (Map.Entry<Layout, Integer> e : groups.entrySet()) {
+			layouts.add(e.getKey().lengths);
+			multiplicities.add(e.getValue());
+		}
+
+		// merge two patterns as long as possible; the least used patterns first
+		boolean merged = true;
+		while (merged && !options.isStopped()) {
+			merged = false;
+			sortByMultiplicity(layouts, multiplicities);
+			for (int a = 0; a < layouts.size() && !options.isStopped(); a++) {
+				int b = a + 1;
+				while (b < layouts.size()) {
+					int ma = multiplicities.get(a);
+					int mb = multiplicities.get(b);
+					int[] c = merge(layouts.get(a), ma, layouts.get(b), mb, rodLength);
+					if (c != null) {
+						// a is the merged pattern now; the next pattern moved to position b
+						layouts.set(a, c);
+						multiplicities.set(a, ma + mb);
+						layouts.remove(b);
+						multiplicities.remove(b);
+						merged = true;
+					} else {
+						b++;
+					}
+				}
+			}
+		}
+
+		// give the pieces to the rods, the most used patterns first
+		Map<Integer, ArrayDeque<Piece>> available = new HashMap<Integer, ArrayDeque<Piece>>();
+		for (Piece p : pieces) {
+			ArrayDeque<Piece> same = available.get(p.getLength());
+			if (same == null) {
+				same = new ArrayDeque<Piece>();
+				available.put(p.getLength(), same);
+			}
+			same.add(p);
+		}
+		List<int[]> usedLayouts = new ArrayList<int[]>();
+		List<Integer> usedMultiplicities = new ArrayList<Integer>();
+		List<Pattern> result = new ArrayList<Pattern>();
+		for (int k = layouts.size() - 1; k >= 0; k--) {
+			int used = 0;
+			for (int m = 0; m < multiplicities.get(k); m++) {
+				List<Piece> rod = new ArrayList<Piece>();
+				for (int length : layouts.get(k)) {
+					ArrayDeque<Piece> same = available.get(length);
+					if (same != null && !same.isEmpty()) {
+						rod.add(same.poll());
+					}
+				}
+				// a rod of only surplus is not cut at all
+				if (!rod.isEmpty()) {
+					result.add(new Pattern(result.size() + 1, rod));
+					used++;
+				}
+			}
+			if (used > 0) {
+				usedLayouts.add(layouts.get(k));
+				usedMultiplicities.add(used);
+			}
+		}
+		Log.debug("Pattern reduction: {} rods in {} patterns, to {} rods in {} patterns",
+				rods.size(), groups.size(), result.size(), usedLayouts.size());
+		return new Plan(usedLayouts, usedMultiplicities, result);
+	}
+
+	/**
+	 * The KOMBI merge of two sorted layouts, or null if the result does not fit on the rod
+	 */
+	private static int[] merge(int[] a, int ma, int[] b, int mb, int rodLength) {
+		int[] result = new int[a.length + b.length];
+		int size = 0;
+		long total = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length || j < b.length) {
+			int length;
+			if (j == b.length || (i < a.length && a[i] <= b[j])) {
+				length = a[i];
+			} else {
+				length = b[j];
+			}
+			int ca = 0;
+			while (i < a.length && a[i] == length) {
+				ca++;
+				i++;
+			}
+			int cb = 0;
+			while (j < b.length && b[j] == length) {
+				cb++;
+				j++;
+			}
+			int count = (ma * ca + mb * cb + ma + mb - 1) / (ma + mb);
+			total = total + (long) count * length;
+			if (total > rodLength) {
+				return null;
+			}
+			if (size + count > result.length) {
+				result = Arrays.copyOf(result, size + count);
+			}
+			for (int k = 0; k < count; k++) {
+				result[size] = length;
+				size++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	private static void sortByMultiplicity(List<int[]> layouts, List<Integer> multiplicities) {
+		final List<int[]> l = new ArrayList<int[]>(layouts);
+		final List<Integer> m = new ArrayList<Integer>(multiplicities);
+		Integer[] order = new Integer[l.size()];
+		for (int k = 0; k < order.length; k++) {
+			order[k] = k;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer k1, Integer k2) {
+				return m.get(k1) - m.get(k2);
+			}
+		});
+		for (int k = 0; k < order.length; k++) {
+			layouts.set(k, l.get(order[k]));
+			multiplicities.set(k, m.get(order[k]));
+		}
+	}
+
+	private static int[] lengths(Pattern p) {
+		int[] result = new int[p.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = p.getPiece(i).getLength();
+		}
+		Arrays.sort(result);
+		return result;
+	}
+}
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact solution of a pattern model: the positions of the used patterns in the list of patterns of the
+ * model, and how often each is used. Only the used patterns are stored, so it stays small when the model
+ * has many columns.
+ */
+public class PatternSolution {
+
+	// a var counts as used above this value
+	private static final double EPSILON = 0.01;
+
+	private final int[] ids;
+	private final int[] multiplicities;
+
+	PatternSolution(int[] ids, int[] multiplicities) {
+		this.ids = ids;
+		this.multiplicities = multiplicities;
+	}
+
+	/**
+	 * The used patterns of a vector of var values, as returned by getValues. Fractional values are
+	 * rounded up, so the solution of an LP relaxation becomes a feasible solution.
+	 * @param values value per pattern
+	 * @return
+	 */
+	static PatternSolution of(double[] values) {
+		int used = 0;
+		for (double v : values) {
+			if (v > EPSILON) {
+				used++;
+			}
+		}
+		int[] ids = new int[used];
+		int[] multiplicities = new int[used];
+		int k = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] > EPSILON) {
+				ids[k] = i;
+				multiplicities[k] = (int) Math.ceil(values[i] - EPSILON);
+				k++;
+			}
+		}
+		return new PatternSolution(ids, multiplicities);
+	}
+
+	/**
+	 * Number of different patterns used
+	 * @return
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Position of the k-th used pattern in the patterns of the model
+	 * @param k
+	 * @return
+	 */
+	public int getId(int k) {
+		return ids[k];
+	}
+
+	/**
+	 * How often the k-th used pattern is cut
+	 * @param k
+	 * @return
+	 */
+	public int getMultiplicity(int k) {
+		return multiplicities[k];
+	}
+
+	/**
+	 * Number of rods: the sum of the multiplicities
+	 * @return
+	 */
+	public int getRods() {
+		int result = 0;
+		for (int m : multiplicities) {
+			result = result + m;
+		}
+		return result;
+	}
+
+	/**
+	 * The used patterns, each as often as it is cut
+	 * @param patterns the patterns of the model, in the order of its vars
+	 * @return
+	 */
+	public List<Pattern> toPatterns(List<Pattern> patterns) {
+		List<Pattern> result = new ArrayList<Pattern>(getRods());
+		for (int k = 0; k < ids.length; k++) {
+			for (int m = 0; m < multiplicities[k]; m++) {
+				result.add(patterns.get(ids[k]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The used patterns, each as often as it is cut. Only the used columns are made into patterns.
+	 * @param columns the columns of the model, in the order of its vars
+	 * @return
+	 */
+	public List<Pattern> toPatterns(ColumnStore columns) {
+		List<Pattern> result = new ArrayList<Pattern>(getRods());
+		for (int k = 0; k < ids.length; k++) {
+			Pattern p = columns.toPattern(ids[k]);
+			for (int m = 0; m < multiplicities[k]; m++) {
+				result.add(p);
+			}
+		}
+		return result;
+	}
+}
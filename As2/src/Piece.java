@@ -39,7 +39,16 @@ public class Piece implements Comparable<Piece> {
 	
 	// toString
 	public String toString() {
-		return "(" + this.INDEX + "," + this.LENGTH +  ")";
+		return appendTo(new StringBuilder(12)).toString();
+	}
+	
+	/**
+	 * Appends the same text as toString to the given builder
+	 * @param sb
+	 * @return the builder
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
+		return sb.append('(').append(this.INDEX).append(',').append(this.LENGTH).append(')');
 	}
 	
 	// compare method
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Prices the columns of a ColumnStore: one pass over the store finds the k columns with the most negative
+ * reduced cost, rodValue minus the sum of the values of their pieces. The values are first summed into a
+ * table per byte of the bitsets: entry b of byte j holds the sum over the bits of b of the pieces 8j to
+ * 8j + 7. The sum of a column is then eight table lookups per 64-bit word, without branches, and empty
+ * words are skipped. The table is rebuilt for every scan, in time linear in the number of pieces.
+ */
+class PoolPricer {
+
+	private final ColumnStore store;
+	private final ColumnStore.View view;
+	private final int words;
+	// partial sums per byte of the bitset: 256 entries for each of the 8 bytes of every word
+	private final double[] table;
+	private double[] reducedCosts = new double[0];
+
+	/**
+	 * Constructor
+	 * @param store
+	 */
+	PoolPricer(ColumnStore store) {
+		this.store = store;
+		this.view = store.view();
+		this.words = store.words();
+		this.table = new double[words * 8 * 256];
+	}
+
+	/**
+	 * Scans the store
+	 * @param values value of every piece of the store
+	 * @param rodValue
+	 * @param k maximum number of columns
+	 * @param maxReducedCost only columns with a lower reduced cost are returned
+	 * @param skip columns that are not priced, such as the columns that are in the master already
+	 * @return the best columns, best first; their reduced costs are in getReducedCost
+	 */
+	int[] scan(double[] values, double rodValue, int k, double maxReducedCost, BitSet skip) {
+		fillTable(values);
+		int[] best = new int[k];
+		double[] bestCosts = new double[k];
+		int found = 0;
+		double threshold = maxReducedCost;
+		int size = store.size();
+		for (int c = 0; c < size; c++) {
+			view.moveTo(c);
+			double sum = 0;
+			for (int w = 0; w < words; w++) {
+				long word = view.getWord(w);
+				if (word == 0) {
+					continue;
+				}
+				int t = w << 11;
+				sum = sum + table[t + (int) (word & 0xFF)]
+						+ table[t + 256 + (int) ((word >>> 8) & 0xFF)]
+						+ table[t + 512 + (int) ((word >>> 16) & 0xFF)]
+						+ table[t + 768 + (int) ((word >>> 24) & 0xFF)]
+						+ table[t + 1024 + (int) ((word >>> 32) & 0xFF)]
+						+ table[t + 1280 + (int) ((word >>> 40) & 0xFF)]
+						+ table[t + 1536 + (int) ((word >>> 48) & 0xFF)]
+						+ table[t + 1792 + (int) (word >>> 56)];
+			}
+			double reducedCost = rodValue - sum;
+			if (reducedCost >= threshold || skip.get(c)) {
+				continue;
+			}
+			// insert in the sorted list of the best columns
+			int i = found < k ? found : k - 1;
+			while (i > 0 && bestCosts[i - 1] > reducedCost) {
+				best[i] = best[i - 1];
+				bestCosts[i] = bestCosts[i - 1];
+				i--;
+			}
+			best[i] = c;
+			bestCosts[i] = reducedCost;
+			if (found < k) {
+				found++;
+			}
+			if (found == k) {
+				threshold = bestCosts[k - 1];
+			}
+		}
+		reducedCosts = Arrays.copyOf(bestCosts, found);
+		return Arrays.copyOf(best, found);
+	}
+
+	/**
+	 * Reduced cost of the i-th column of the last scan
+	 * @param i
+	 * @return
+	 */
+	double getReducedCost(int i) {
+		return reducedCosts[i];
+	}
+
+	private void fillTable(double[] values) {
+		int pieces = store.getPieces().size();
+		for (int j = 0; j < 8 * words; j++) {
+			int base = j << 8;
+			table[base] = 0;
+			for (int b = 1; b < 256; b++) {
+				int piece = 8 * j + Integer.numberOfTrailingZeros(b);
+				table[base + b] = table[base + (b & (b - 1))] + (piece < pieces ? values[piece] : 0);
+			}
+		}
+	}
+}
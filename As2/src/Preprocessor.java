@@ -0,0 +1,289 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reduces a Cutting Stock instance before it is given to an exact model. Rods are fixed for pieces
+ * when some optimal solution is known to cut them like that, so the optimum of the instance is the
+ * number of fixed rods plus the optimum of the residual instance:
+ * - a piece that fits with no other piece gets a rod of its own
+ * - two pieces that fill a rod exactly get a rod together
+ * - Martello-Toth dominance: a piece i gets a rod with j, the largest piece that fits with it, when no
+ *   set of two or more other pieces fits with i and is longer than j (such a set would not be better)
+ * The bound of the reduction is the number of fixed rods plus the LowerBounds of the residual pieces.
+ */
+public class Preprocessor {
+
+	/**
+	 * The outcome of the reduction
+	 */
+	public static class Reduction {
+		private final List<Pattern> fixed;
+		private final List<Piece> residual;
+		private final int lowerBound;
+
+		Reduction(List<Pattern> fixed, List<Piece> residual, int lowerBound) {
+			this.fixed = fixed;
+			this.residual = residual;
+			this.lowerBound = lowerBound;
+		}
+
+		// getters
+		public List<Pattern> getFixed() {
+			return fixed;
+		}
+
+		public List<Piece> getResidual() {
+			return residual;
+		}
+
+		/**
+		 * Lower bound on the number of rods for the whole instance
+		 * @return
+		 */
+		public int getLowerBound() {
+			return lowerBound;
+		}
+
+		/**
+		 * True if the reduction solved the instance
+		 * @return
+		 */
+		public boolean isSolved() {
+			return residual.isEmpty();
+		}
+	}
+
+	/**
+	 * Reduces the instance
+	 * @param pieces
+	 * @param rodLength
+	 * @return the fixed rods, the residual pieces and a lower bound
+	 */
+	public static Reduction reduce(List<Piece> pieces, int rodLength) {
+		// sort decreasing and work on the lengths
+		List<Piece> sorted = new ArrayList<Piece>(pieces);
+		Collections.sort(sorted, new Comparator<Piece>() {
+			@Override
+			public int compare(Piece p1, Piece p2) {
+				return p2.getLength() - p1.getLength();
+			}
+		});
+		int n = sorted.size();
+		int[] w = new int[n];
+		for (int i = 0; i < n; i++) {
+			w[i] = sorted.get(i).getLength();
+			if (w[i] > rodLength) {
+				throw new IllegalArgumentException("Piece " + sorted.get(i) + " is longer than the rod");
+			}
+		}
+		int[] first = new int[n];
+		int[] second = new int[n];
+		int rods = reduce(w, rodLength, first, second);
+		List<Pattern> fixed = new ArrayList<Pattern>(rods);
+		boolean[] removed = new boolean[n];
+		for (int r = 0; r < rods; r++) {
+			List<Piece> rod = new ArrayList<Piece>(2);
+			rod.add(sorted.get(first[r]));
+			removed[first[r]] = true;
+			if (second[r] >= 0) {
+				rod.add(sorted.get(second[r]));
+				removed[second[r]] = true;
+			}
+			fixed.add(new Pattern(r + 1, rod));
+		}
+
+		List<Piece> residualPieces = new ArrayList<Piece>(n);
+		int[] rest = new int[n];
+		int m = 0;
+		for (int i = n - 1; i >= 0; i--) {
+			if (!removed[i]) {
+				rest[m] = w[i];		// increasing
+				m++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (!removed[i]) {
+				residualPieces.add(sorted.get(i));
+			}
+		}
+		int[] all = new int[n];
+		for (int i = 0; i < n; i++) {
+			all[i] = w[n - 1 - i];
+		}
+		int bound = Math.max(rods + bestBound(Arrays.copyOf(rest, m), rodLength), bestBound(all, rodLength));
+		return new Reduction(fixed, residualPieces, bound);
+	}
+
+	/**
+	 * The reductions on the lengths alone. Rod r holds the pieces first[r] and second[r], or only first[r]
+	 * when second[r] is -1. Every step is a binary search or a move of the skip pointers over the removed
+	 * pieces, so the reduction takes O(n log n) for n pieces, plus the dominance test of the pairs, which
+	 * only looks at the distinct lengths between half and all of the largest fitting piece.
+	 * @param w the lengths, sorted decreasingly, none longer than the rod
+	 * @param rodLength
+	 * @param first room for n entries
+	 * @param second room for n entries
+	 * @return the number of fixed rods
+	 */
+	static int reduce(int[] w, int rodLength, int[] first, int[] second) {
+		int n = w.length;
+		Alive alive = new Alive(n);
+		int rods = 0;
+		for (int i = 0; i < n; i++) {
+			if (!alive.contains(i)) {
+				continue;
+			}
+			int residual = rodLength - w[i];
+			// the largest other piece that fits with i, and the two smallest other pieces
+			int j = alive.next(firstAtMost(w, residual), i);
+			int smallest = alive.previous(n - 1, i);
+			int secondSmallest = smallest < 0 ? -1 : alive.previous(smallest - 1, i);
+			if (j < 0) {
+				// nothing fits with i
+				alive.remove(i);
+				first[rods] = i;
+				second[rods] = -1;
+				rods++;
+				continue;
+			}
+			boolean dominant = w[j] == residual;		// exact fill
+			if (!dominant) {
+				boolean pairFits = secondSmallest >= 0 && w[smallest] + w[secondSmallest] <= residual;
+				if (!pairFits) {
+					// only single pieces fit with i, and j is the largest of them
+					dominant = true;
+				} else if (!tripleFits(w, alive, i, smallest, secondSmallest, residual)) {
+					// sets of two: dominated by j if none is longer than j
+					dominant = !pairLongerThan(w, alive, i, j, residual);
+				}
+			}
+			if (dominant) {
+				alive.remove(i);
+				alive.remove(j);
+				first[rods] = i;
+				second[rods] = j;
+				rods++;
+			}
+		}
+		return rods;
+	}
+
+	private static int bestBound(int[] lengths, int rodLength) {
+		return Math.max(LowerBounds.l2(lengths, rodLength), LowerBounds.dff(lengths, rodLength));
+	}
+
+	/**
+	 * True if the three smallest remaining pieces other than i fit in residual together
+	 */
+	private static boolean tripleFits(int[] w, Alive alive, int i, int smallest, int secondSmallest, int residual) {
+		int third = alive.previous(secondSmallest - 1, i);
+		return third >= 0 && w[smallest] + w[secondSmallest] + w[third] <= residual;
+	}
+
+	/**
+	 * True if two remaining pieces other than i fit in residual and are longer than piece j together.
+	 * The longer piece a of such a pair is at most w[j], as j is the largest that fits, and more than
+	 * w[j] / 2; for every distinct a the best partner is found by binary search.
+	 */
+	private static boolean pairLongerThan(int[] w, Alive alive, int i, int j, int residual) {
+		int a = j;
+		while (a >= 0 && 2 * w[a] > w[j]) {
+			int b = alive.next(firstAtMost(w, residual - w[a]), i);
+			if (b == a) {
+				b = alive.next(a + 1, i);
+			}
+			if (b >= 0 && w[a] + w[b] > w[j]) {
+				return true;
+			}
+			// the next distinct length
+			a = alive.next(firstAtMost(w, w[a] - 1), i);
+		}
+		return false;
+	}
+
+	/**
+	 * Index of the first length at most value, in a decreasing array; the length of the array if none
+	 */
+	private static int firstAtMost(int[] w, int value) {
+		int lo = 0;
+		int hi = w.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (w[mid] > value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * The pieces that are not removed yet, with skip pointers in both directions that jump over the
+	 * removed ones; the pointers are shortened as they are followed, so the moves take amortized
+	 * almost constant time.
+	 */
+	private static class Alive {
+		// next[k]: the first remaining piece at k or later is found by following next; n means none
+		private final int[] next;
+		// previous[k + 1]: the same for the last remaining piece at k or earlier; 0 means none
+		private final int[] previous;
+
+		Alive(int n) {
+			next = new int[n + 1];
+			previous = new int[n + 1];
+			for (int k = 0; k <= n; k++) {
+				next[k] = k;
+				previous[k] = k;
+			}
+		}
+
+		boolean contains(int k) {
+			return next[k] == k;
+		}
+
+		void remove(int k) {
+			next[k] = k + 1;
+			previous[k + 1] = k;
+		}
+
+		/**
+		 * The first remaining piece at k or later, other than skip; -1 if none
+		 */
+		int next(int k, int skip) {
+			int result = find(next, k);
+			if (result == skip) {
+				result = find(next, skip + 1);
+			}
+			return result == next.length - 1 ? -1 : result;
+		}
+
+		/**
+		 * The last remaining piece at k or earlier, other than skip; -1 if none
+		 */
+		int previous(int k, int skip) {
+			int result = find(previous, k + 1) - 1;
+			if (result == skip) {
+				result = find(previous, skip) - 1;
+			}
+			return result;
+		}
+
+		private static int find(int[] pointers, int k) {
+			int root = k;
+			while (pointers[root] != root) {
+				root = pointers[root];
+			}
+			// shorten the path
+			while (pointers[k] != root) {
+				int up = pointers[k];
+				pointers[k] = root;
+				k = up;
+			}
+			return root;
+		}
+	}
+}
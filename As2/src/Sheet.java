@@ -0,0 +1,41 @@
+/**
+ * Sheet class for two-dimensional cutting. Stores the width and the height of the stock sheet.
+ */
+public class Sheet {
+
+	private final int WIDTH;
+	private final int HEIGHT;
+
+	/**
+	 * Constructor
+	 * @param width
+	 * @param height
+	 */
+	public Sheet(int width, int height) {
+		this.WIDTH = width;
+		this.HEIGHT = height;
+	}
+
+	// getters
+	public int getWidth() {
+		return this.WIDTH;
+	}
+
+	public int getHeight() {
+		return this.HEIGHT;
+	}
+
+	/**
+	 * True if the item fits on the sheet
+	 * @param item
+	 * @return
+	 */
+	public boolean fits(Item2D item) {
+		return item.getWidth() <= WIDTH && item.getHeight() <= HEIGHT;
+	}
+
+	// toString
+	public String toString() {
+		return " " + WIDTH + "x" + HEIGHT;
+	}
+}
@@ -0,0 +1,400 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Cache of solved orders, keyed by InstanceFingerprint. Only lengths are stored, so a hit is translated
+ * to the pieces of the new order. The memory tier is LRU, bounded by the number of entries and by the
+ * number of stored lengths. With a directory, entries are also written to disk and read back on a
+ * memory miss, so the cache survives restarts.
+ *
+ * An order that differs from a cached one in a few pieces (a near hit) does not get the solution,
+ * but the cached columns as a warm start for column generation.
+ * Only optimal solutions are returned as hits, so a hit holds for any target gap; entries of solves that
+ * stopped at a gap or an iteration limit only serve their columns. The cache is for rod counts: solves
+ * under other cost models are not cached (see CuttingStockSolver).
+ */
+public class SolutionCache {
+
+	private static final String SUFFIX = ".sol";
+
+	private final int maxEntries;
+	private final long maxLengths;
+	private final File directory;
+	private final LinkedHashMap<InstanceFingerprint, Entry> entries;
+	private long storedLengths;
+	private int hits;
+	private int nearHits;
+	private int misses;
+
+	/**
+	 * A solved order: the solution and the columns generated for it, as lists of lengths
+	 */
+	private static final class Entry {
+		private final InstanceFingerprint fingerprint;
+		private final SolveResult.Status status;
+		private final double objective;
+		private final double bound;
+		private final int[][] solution;
+		private final int[][] columns;
+
+		Entry(InstanceFingerprint fingerprint, SolveResult.Status status, double objective, double bound, int[][] solution, int[][] columns) {
+			this.fingerprint = fingerprint;
+			this.status = status;
+			this.objective = objective;
+			this.bound = bound;
+			this.solution = solution;
+			this.columns = columns;
+		}
+
+		long size() {
+			long result = fingerprint.size();
+			for (int[] p : solution) {
+				result = result + p.length;
+			}
+			for (int[] c : columns) {
+				result = result + c.length;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param maxEntries number of orders kept in memory
+	 * @param maxLengths number of lengths (solution, columns and key together) kept in memory
+	 * @param directory directory for the disk tier, or null for memory only
+	 */
+	public SolutionCache(int maxEntries, long maxLengths, File directory) {
+		this.maxEntries = maxEntries;
+		this.maxLengths = maxLengths;
+		this.directory = directory;
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		this.entries = new LinkedHashMap<InstanceFingerprint, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the cached optimal solution of this order, translated to its pieces, or null on a miss
+	 * @param pieces
+	 * @param rodLength
+	 * @return
+	 */
+	public SolveResult<Pattern> get(List<Piece> pieces, int rodLength) {
+		InstanceFingerprint fingerprint = new InstanceFingerprint(pieces, rodLength);
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(fingerprint);
+		}
+		if (entry == null && directory != null) {
+			entry = read(fingerprint);
+			if (entry != null) {
+				store(entry);
+			}
+		}
+		synchronized (this) {
+			if (entry == null || entry.status != SolveResult.Status.OPTIMAL) {
+				misses++;
+				return null;
+			}
+			hits++;
+		}
+		List<Pattern> patterns = toPatterns(entry.solution, pieces, false);
+		return patterns == null ? null : new SolveResult<Pattern>(entry.status, entry.objective, entry.bound, patterns, 0);
+	}
+
+	/**
+	 * Finds a cached order with the same rod length that differs in at most maxDifference pieces, and
+	 * returns its columns translated to the given pieces. Columns that need a length the order does
+	 * not have (often enough) are dropped.
+	 * @param pieces
+	 * @param rodLength
+	 * @param maxDifference
+	 * @return the columns, empty if there is no near hit
+	 */
+	public List<Pattern> seedColumns(List<Piece> pieces, int rodLength, int maxDifference) {
+		InstanceFingerprint fingerprint = new InstanceFingerprint(pieces, rodLength);
+		Entry best = null;
+		int bestDifference = maxDifference + 1;
+		// the candidates are copied under the lock and compared outside it, so other solves do not wait
+		List<Entry> candidates = new ArrayList<Entry>();
+		synchronized (this) {
+			for (Entry e : entries.values()) {
+				if (e.fingerprint.getRodLength() == rodLength && Math.abs(e.fingerprint.size() - fingerprint.size()) <= maxDifference) {
+					candidates.add(e);
+				}
+			}
+		}
+		for (Entry e : candidates) {
+			if (Math.abs(e.fingerprint.size() - fingerprint.size()) >= bestDifference) {
+				continue;
+			}
+			int difference = difference(e.fingerprint.lengths(), fingerprint.lengths(), bestDifference);
+			if (difference < bestDifference) {
+				best = e;
+				bestDifference = difference;
+			}
+		}
+		if (best == null) {
+			return new ArrayList<Pattern>();
+		}
+		synchronized (this) {
+			nearHits++;
+		}
+		return toPatterns(best.columns, pieces, true);
+	}
+
+	/**
+	 * Stores the result of a solve. Results that were cut short by time or cancellation are not cached.
+	 * @param pieces
+	 * @param rodLength
+	 * @param result
+	 * @param columns the columns that column generation ended with, may be empty
+	 */
+	public void put(List<Piece> pieces, int rodLength, SolveResult<Pattern> result, List<Pattern> columns) {
+		SolveResult.Status status = result.getStatus();
+		if (status == SolveResult.Status.TIME_LIMIT || status == SolveResult.Status.CANCELLED || status == SolveResult.Status.NO_SOLUTION) {
+			return;
+		}
+		Entry entry = new Entry(new InstanceFingerprint(pieces, rodLength), status, result.getObjective(), result.getBound(),
+				toLengths(result.getPatterns()), toLengths(columns));
+		store(entry);
+		if (directory != null) {
+			try {
+				write(entry);
+			} catch (IOException e) {
+				Log.warn("Cannot write cache entry {}: {}", entry.fingerprint, e);
+			}
+		}
+	}
+
+	public synchronized String toString() {
+		return entries.size() + " entries, " + hits + " hits, " + nearHits + " near hits, " + misses + " misses";
+	}
+
+	private synchronized void store(Entry entry) {
+		Entry old = entries.put(entry.fingerprint, entry);
+		if (old != null) {
+			storedLengths = storedLengths - old.size();
+		}
+		storedLengths = storedLengths + entry.size();
+		// evict the least recently used entries
+		Iterator<Entry> it = entries.values().iterator();
+		while ((entries.size() > maxEntries || storedLengths > maxLengths) && it.hasNext()) {
+			Entry eldest = it.next();
+			if (eldest == entry) {
+				continue;
+			}
+			storedLengths = storedLengths - eldest.size();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Size of the symmetric difference of two sorted multisets, counting stops at limit
+	 */
+	private static int difference(int[] a, int[] b, int limit) {
+		int i = 0;
+		int j = 0;
+		int result = 0;
+		while ((i < a.length || j < b.length) && result < limit) {
+			if (j == b.length || (i < a.length && a[i] < b[j])) {
+				i++;
+				result++;
+			} else if (i == a.length || b[j] < a[i]) {
+				j++;
+				result++;
+			} else {
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	private static int[][] toLengths(List<Pattern> patterns) {
+		int[][] result = new int[patterns.size()][];
+		for (int k = 0; k < result.length; k++) {
+			List<Piece> pieces = patterns.get(k).getPieces();
+			result[k] = new int[pieces.size()];
+			for (int i = 0; i < result[k].length; i++) {
+				result[k][i] = pieces.get(i).getLength();
+			}
+			Arrays.sort(result[k]);
+		}
+		return result;
+	}
+
+	/**
+	 * Turns lists of lengths into patterns over the given pieces.
+	 * For a solution every piece is used once, so the patterns partition the pieces. For columns every
+	 * column takes the next pieces of its lengths in turn, wrapping around, so the columns are spread over
+	 * identical pieces; columns that need more pieces of a length than there are, are dropped.
+	 * @return the patterns, or null if the counts of the lengths of a solution differ from the pieces
+	 */
+	private static List<Pattern> toPatterns(int[][] lengths, List<Piece> pieces, boolean columns) {
+		Map<Integer, List<Piece>> byLength = new HashMap<Integer, List<Piece>>();
+		for (Piece p : pieces) {
+			List<Piece> same = byLength.get(p.getLength());
+			if (same == null) {
+				same = new ArrayList<Piece>();
+				byLength.put(p.getLength(), same);
+			}
+			same.add(p);
+		}
+		Map<Integer, Integer> next = new HashMap<Integer, Integer>();
+		List<Pattern> result = new ArrayList<Pattern>(lengths.length);
+		for (int[] pattern : lengths) {
+			List<Piece> mapped = new ArrayList<Piece>(pattern.length);
+			Map<Integer, ArrayDeque<Piece>> taken = new HashMap<Integer, ArrayDeque<Piece>>();
+			boolean feasible = true;
+			for (int length : pattern) {
+				List<Piece> same = byLength.get(length);
+				ArrayDeque<Piece> used = taken.get(length);
+				int count = used == null ? 0 : used.size();
+				if (same == null || count >= same.size()) {
+					feasible = false;
+					break;
+				}
+				Integer start = next.get(length);
+				int position = (start == null ? 0 : start) + count;
+				if (!columns && position >= same.size()) {
+					// a solution never wraps around: that would cut a piece twice
+					return null;
+				}
+				position = position % same.size();
+				if (used == null) {
+					used = new ArrayDeque<Piece>();
+					taken.put(length, used);
+				}
+				used.add(same.get(position));
+				mapped.add(same.get(position));
+			}
+			if (!feasible) {
+				if (columns) {
+					continue;
+				}
+				return null;
+			}
+			for (Map.Entry<Integer, ArrayDeque<Piece>> e : taken.entrySet()) {
+				Integer start = next.get(e.getKey());
+				next.put(e.getKey(), (start == null ? 0 : start) + e.getValue().size());
+			}
+			result.add(new Pattern(result.size() + 1, mapped));
+		}
+		if (!columns) {
+			// and every piece is cut
+			for (Map.Entry<Integer, List<Piece>> e : byLength.entrySet()) {
+				Integer used = next.get(e.getKey());
+				if (used == null || used != e.getValue().size()) {
+					return null;
+				}
+			}
+		}
+		return result;
+	}
+
+	// disk tier: one text file per entry, named after the key of the fingerprint
+	private void write(Entry entry) throws IOException {
+		File file = new File(directory, entry.fingerprint.getKey() + SUFFIX);
+		// a temp file of its own, so concurrent writers of the same entry never share one
+		Path tmp = Files.createTempFile(directory.toPath(), entry.fingerprint.getKey(), ".tmp");
+		Writer out = new BufferedWriter(new FileWriter(tmp.toFile()));
+		boolean moved = false;
+		try {
+			StringBuilder sb = new StringBuilder();
+			sb.append(entry.fingerprint.getRodLength()).append(' ').append(entry.status).append(' ')
+				.append(entry.objective).append(' ').append(entry.bound).append('\n');
+			appendLine(sb, "K", entry.fingerprint.lengths());
+			for (int[] p : entry.solution) {
+				appendLine(sb, "S", p);
+			}
+			for (int[] c : entry.columns) {
+				appendLine(sb, "C", c);
+			}
+			out.write(sb.toString());
+			out.close();
+			try {
+				Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		} finally {
+			out.close();
+			if (!moved) {
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+
+	private static void appendLine(StringBuilder sb, String tag, int[] lengths) {
+		sb.append(tag);
+		for (int length : lengths) {
+			sb.append(' ').append(length);
+		}
+		sb.append('\n');
+	}
+
+	private Entry read(InstanceFingerprint fingerprint) {
+		File file = new File(directory, fingerprint.getKey() + SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			Scanner s = new Scanner(file);
+			try {
+				String[] header = s.nextLine().split(" ");
+				SolveResult.Status status = SolveResult.Status.valueOf(header[1]);
+				double objective = Double.parseDouble(header[2]);
+				double bound = Double.parseDouble(header[3]);
+				List<int[]> solution = new ArrayList<int[]>();
+				List<int[]> columns = new ArrayList<int[]>();
+				int[] key = null;
+				while (s.hasNextLine()) {
+					String[] line = s.nextLine().split(" ");
+					int[] lengths = new int[line.length - 1];
+					for (int i = 1; i < line.length; i++) {
+						lengths[i - 1] = Integer.parseInt(line[i]);
+					}
+					if (line[0].equals("K")) {
+						key = lengths;
+					} else if (line[0].equals("S")) {
+						solution.add(lengths);
+					} else {
+						columns.add(lengths);
+					}
+				}
+				// guard against hash collisions and truncated files
+				if (key == null || !Arrays.equals(key, fingerprint.lengths()) || Integer.parseInt(header[0]) != fingerprint.getRodLength()) {
+					return null;
+				}
+				return new Entry(fingerprint, status, objective, bound, solution.toArray(new int[0][]), columns.toArray(new int[0][]));
+			} finally {
+				s.close();
+			}
+		} catch (IOException e) {
+			Log.warn("Cannot read cache entry {}: {}", file, e);
+			return null;
+		} catch (RuntimeException e) {
+			Log.warn("Corrupt cache entry {}: {}", file, e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+import java.util.List;
+
+/**
+ * Receives the progress of an anytime solve. The methods are called on the solving thread
+ * (for CPLEX: from inside a callback), so they should return quickly.
+ * @param <C> the type of the patterns of the solutions: Pattern for rods, Pattern2D for sheets
+ */
+public interface SolveListener<C> {
+
+	/**
+	 * Listener that ignores all progress
+	 * @return
+	 */
+	static <C> SolveListener<C> none() {
+		return new SolveListener<C>() {
+			@Override
+			public void improvedSolution(double objective, List<C> patterns) {
+			}
+
+			@Override
+			public void improvedBound(double bound) {
+			}
+		};
+	}
+
+	/**
+	 * A better solution was found
+	 * @param objective number of rods or sheets
+	 * @param patterns one pattern per rod or sheet
+	 */
+	void improvedSolution(double objective, List<C> patterns);
+
+	/**
+	 * A better lower bound was proven
+	 * @param bound
+	 */
+	void improvedBound(double bound);
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import ilog.cplex.IloCplex;
+
+/**
+ * Limits for an anytime solve: a wall-clock budget, a target relative gap and cancellation.
+ * The clock starts at the first call to start(), normally when the solve begins, and is shared by all
+ * stages of a solve that use the same options object. cancel() may be called from any thread; it also
+ * aborts a CPLEX solve that is running at that moment.
+ */
+public class SolveOptions {
+
+	private final double timeLimit;
+	private final double targetGap;
+	private volatile boolean cancelled;
+	private volatile CostModel costs = CostModel.RODS;
+	private long startNanos = -1;
+	private final List<IloCplex.Aborter> aborters = new ArrayList<IloCplex.Aborter>();
+
+	/**
+	 * Options without limits: solve to optimality
+	 */
+	public SolveOptions() {
+		this(Double.POSITIVE_INFINITY, 0);
+	}
+
+	/**
+	 * Constructor
+	 * @param timeLimit wall-clock budget in seconds
+	 * @param targetGap stop as soon as (incumbent - bound) / incumbent is at most this value
+	 */
+	public SolveOptions(double timeLimit, double targetGap) {
+		this.timeLimit = timeLimit;
+		this.targetGap = targetGap;
+	}
+
+	// getters
+	public double getTimeLimit() {
+		return timeLimit;
+	}
+
+	public double getTargetGap() {
+		return targetGap;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * The costs that the models minimize; by default the number of rods
+	 * @return
+	 */
+	public CostModel getCostModel() {
+		return costs;
+	}
+
+	// setter
+	public void setCostModel(CostModel costs) {
+		this.costs = costs;
+	}
+
+	/**
+	 * Starts the clock, if it is not running yet
+	 */
+	public synchronized void start() {
+		if (startNanos < 0) {
+			startNanos = System.nanoTime();
+		}
+	}
+
+	public synchronized double elapsedSeconds() {
+		return startNanos < 0 ? 0 : (System.nanoTime() - startNanos) / 1e9;
+	}
+
+	public double remainingSeconds() {
+		return timeLimit - elapsedSeconds();
+	}
+
+	/**
+	 * True when the solve has to stop: cancelled or out of time
+	 * @return
+	 */
+	public boolean isStopped() {
+		return cancelled || remainingSeconds() <= 0;
+	}
+
+	/**
+	 * Cancels the solve. The solver returns its best known solution as soon as possible.
+	 */
+	public void cancel() {
+		cancelled = true;
+		synchronized (aborters) {
+			for (IloCplex.Aborter a : aborters) {
+				a.abort();
+			}
+		}
+	}
+
+	/**
+	 * Applies the limits to a CPLEX instance before it is solved.
+	 * Call release with the returned aborter when the solve is done.
+	 * @param cplex
+	 * @return
+	 * @throws ilog.concert.IloException
+	 */
+	IloCplex.Aborter apply(IloCplex cplex) throws ilog.concert.IloException {
+		start();
+		double remaining = remainingSeconds();
+		if (!Double.isInfinite(remaining)) {
+			cplex.setParam(IloCplex.DoubleParam.TiLim, Math.max(remaining, 0.01));
+		}
+		cplex.setParam(IloCplex.DoubleParam.EpGap, Math.max(targetGap, 1e-4));
+		IloCplex.Aborter aborter = cplex.use(new IloCplex.Aborter());
+		synchronized (aborters) {
+			aborters.add(aborter);
+		}
+		if (cancelled) {
+			aborter.abort();
+		}
+		return aborter;
+	}
+
+	void release(IloCplex cplex, IloCplex.Aborter aborter) throws ilog.concert.IloException {
+		synchronized (aborters) {
+			aborters.remove(aborter);
+		}
+		cplex.remove(aborter);
+		// back to the CPLEX defaults, so later plain solves are not limited
+		cplex.setParam(IloCplex.DoubleParam.TiLim, 1e75);
+		cplex.setParam(IloCplex.DoubleParam.EpGap, 1e-4);
+	}
+}
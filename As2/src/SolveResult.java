@@ -0,0 +1,105 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of an anytime solve: the best known solution, the best lower bound and why the solve stopped.
+ * @param <C> the type of the patterns of the solution: Pattern for rods, Pattern2D for sheets
+ */
+public class SolveResult<C> {
+
+	public enum Status {
+		OPTIMAL,			// the solution matches the bound
+		GAP_REACHED,		// the target gap was reached
+		TIME_LIMIT,			// out of time, best known solution returned
+		CANCELLED,			// cancelled, best known solution returned
+		ITERATION_LIMIT,	// column generation stopped after the given number of iterations, or a stage stopped without a solution of its own
+		LP_OPTIMAL,			// the LP relaxation was solved, but the best integer solution found does not match its bound
+		DECOMPOSED,			// stitched from the solutions of sub-orders, which do not prove anything for the whole order
+		NO_SOLUTION			// stopped before any solution was found
+	}
+
+	private final Status status;
+	private final double objective;
+	private final double bound;
+	private final List<C> patterns;
+	private final double seconds;
+
+	public SolveResult(Status status, double objective, double bound, List<C> patterns, double seconds) {
+		this.status = status;
+		this.objective = objective;
+		this.bound = bound;
+		this.patterns = patterns == null ? Collections.<C>emptyList() : patterns;
+		this.seconds = seconds;
+	}
+
+	/**
+	 * Derives the status from the solution, the bound and the options after the solve stopped
+	 * @param objective best solution value, infinite if none
+	 * @param bound
+	 * @param patterns
+	 * @param options
+	 * @param limitStatus status to use if none of the targets was met. The status follows the solution: with a
+	 * solution, NO_SOLUTION (of the last stage) becomes ITERATION_LIMIT
+	 * @return
+	 */
+	static <C> SolveResult<C> of(double objective, double bound, List<C> patterns, SolveOptions options, Status limitStatus) {
+		SolveResult<C> result = new SolveResult<C>(limitStatus, objective, bound, patterns, options.elapsedSeconds());
+		Status status;
+		if (patterns == null || Double.isInfinite(objective)) {
+			status = Status.NO_SOLUTION;
+		} else if (result.getGap() <= 1e-9) {
+			status = Status.OPTIMAL;
+		} else if (result.getGap() <= options.getTargetGap()) {
+			status = Status.GAP_REACHED;
+		} else if (options.isCancelled()) {
+			status = Status.CANCELLED;
+		} else if (options.remainingSeconds() <= 0) {
+			status = Status.TIME_LIMIT;
+		} else if (limitStatus == Status.NO_SOLUTION) {
+			status = Status.ITERATION_LIMIT;
+		} else {
+			status = limitStatus;
+		}
+		return new SolveResult<C>(status, objective, bound, patterns, options.elapsedSeconds());
+	}
+
+	// getters
+	public Status getStatus() {
+		return status;
+	}
+
+	public double getObjective() {
+		return objective;
+	}
+
+	public double getBound() {
+		return bound;
+	}
+
+	public List<C> getPatterns() {
+		return patterns;
+	}
+
+	public double getSeconds() {
+		return seconds;
+	}
+
+	/**
+	 * Relative gap between the solution and the bound. The number of rods or sheets is integral, so the bound is rounded up.
+	 * @return
+	 */
+	public double getGap() {
+		if (Double.isInfinite(objective)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (objective <= 0) {
+			return 0;
+		}
+		double roundedBound = Math.ceil(bound - 1e-6);
+		return Math.max(0, (objective - roundedBound) / objective);
+	}
+
+	public String toString() {
+		return status + ": " + objective + ", bound " + bound + ", " + seconds + "s";
+	}
+}
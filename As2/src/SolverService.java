@@ -0,0 +1,283 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ilog.concert.IloException;
+
+/**
+ * Long-running solver for many cutting orders in one JVM, so class loading, JIT warm-up and loading
+ * CPLEX are paid once. Orders come in through submit, or as files in an inbox directory:
+ * NAME.job holds the rod length, followed by one "index length" line per piece (like small.txt).
+ * The solution is written to NAME.solution in the outbox and the job file is moved to inbox/done.
+ *
+ * Orders with the same fingerprint that are in progress at the same time are solved once, and
+ * finished orders are answered from the SolutionCache.
+ * At most solverThreads solves run concurrently; waiting for a solve and writing results happens on
+ * a separate, unbounded set of light job threads. Orders of more than DECOMPOSE_ABOVE pieces are split
+ * by the OrderDecomposer, whose sub-orders run on a pool of part threads. Every CPLEX solve, of an order
+ * or of a sub-order, takes one of solverThreads permits, so no more than solverThreads solves run at once.
+ * The time limit of an order runs from its submit, so the time it waits for a thread or a permit counts.
+ */
+public class SolverService {
+
+	private static final String JOB = ".job";
+	private static final String WORKING = ".working";
+	// orders with more pieces are decomposed
+	private static final int DECOMPOSE_ABOVE = 4 * OrderDecomposer.DEFAULT_PART_SIZE;
+
+	private final File inbox;
+	private final File outbox;
+	private final File done;
+	private final double timeLimit;
+	private final SolutionCache cache;
+	private final ExecutorService solvers;
+	private final ExecutorService jobs;
+	private final ScheduledExecutorService poller;
+	private final ExecutorService parts;
+	// one permit per CPLEX solve that may run
+	private final Semaphore permits;
+	private final OrderDecomposer decomposer;
+	private final ConcurrentHashMap<InstanceFingerprint, Future<SolveResult<Pattern>>> inFlight = new ConcurrentHashMap<InstanceFingerprint, Future<SolveResult<Pattern>>>();
+
+	/**
+	 * Constructor
+	 * @param inbox directory with the job files, may be null to only use submit
+	 * @param outbox directory for the solutions
+	 * @param solverThreads number of solves that may run at the same time
+	 * @param timeLimit seconds per order, from its submit
+	 * @param cache solutions of earlier orders
+	 */
+	public SolverService(File inbox, File outbox, int solverThreads, double timeLimit, SolutionCache cache) {
+		this.inbox = inbox;
+		this.outbox = outbox;
+		this.done = inbox == null ? null : new File(inbox, "done");
+		this.timeLimit = timeLimit;
+		this.cache = cache;
+		this.solvers = Executors.newFixedThreadPool(solverThreads, threads("solver"));
+		this.jobs = Executors.newCachedThreadPool(threads("job"));
+		this.poller = Executors.newSingleThreadScheduledExecutor(threads("inbox"));
+		this.parts = Executors.newFixedThreadPool(solverThreads, threads("part"));
+		this.permits = new Semaphore(solverThreads);
+		this.decomposer = new OrderDecomposer(parts, permits, OrderDecomposer.DEFAULT_PART_SIZE, OrderDecomposer.Split.LENGTH_CLASS);
+	}
+
+	/**
+	 * Warms up the solver on a small generated instance, then starts watching the inbox
+	 */
+	public void start() {
+		try {
+			InstanceGenerator generator = new InstanceGenerator(InstanceGenerator.InstanceClass.FALKENAUER_U, 20, 1);
+			SolveResult<Pattern> warmup = CuttingStockSolver.solve(generator.generate(), generator.getRodLength(), new SolveOptions(5, 0), SolveListener.<Pattern>none());
+			Log.info("Warm-up solved: {}", warmup);
+		} catch (IloException e) {
+			Log.warn("Warm-up failed: {}", e);
+		}
+		if (inbox != null) {
+			done.mkdirs();
+			outbox.mkdirs();
+			poller.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					pollInbox();
+				}
+			}, 0, 250, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops accepting jobs and waits for the running ones
+	 * @throws InterruptedException
+	 */
+	public void stop() throws InterruptedException {
+		poller.shutdown();
+		poller.awaitTermination(1, TimeUnit.MINUTES);
+		jobs.shutdown();
+		jobs.awaitTermination(1, TimeUnit.HOURS);
+		solvers.shutdown();
+		solvers.awaitTermination(1, TimeUnit.MINUTES);
+		parts.shutdown();
+		parts.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Solves an order. If an identical order is being solved already, its solve is shared.
+	 * @param name used for the solution file; null to not write one
+	 * @param pieces
+	 * @param rodLength
+	 * @return the solution over the given pieces
+	 */
+	public Future<SolveResult<Pattern>> submit(final String name, final List<Piece> pieces, final int rodLength) {
+		final InstanceFingerprint fingerprint = new InstanceFingerprint(pieces, rodLength);
+		final Future<SolveResult<Pattern>> shared = solveOnce(fingerprint, pieces, rodLength);
+		return jobs.submit(new Callable<SolveResult<Pattern>>() {
+			@Override
+			public SolveResult<Pattern> call() throws Exception {
+				SolveResult<Pattern> result = shared.get();
+				List<Pattern> patterns = InstanceFingerprint.remap(result.getPatterns(), pieces);
+				// the rods of this order: remapping drops rods that only held surplus pieces
+				double objective = result.getStatus() == SolveResult.Status.NO_SOLUTION ? result.getObjective() : patterns.size();
+				SolveResult<Pattern> own = new SolveResult<Pattern>(result.getStatus(), objective, result.getBound(), patterns, result.getSeconds());
+				if (name != null) {
+					writeSolution(new File(outbox, name + ".solution"), own);
+				}
+				return own;
+			}
+		});
+	}
+
+	private Future<SolveResult<Pattern>> solveOnce(final InstanceFingerprint fingerprint, final List<Piece> pieces, final int rodLength) {
+		// the clock starts now, not when a thread and a permit are free
+		final SolveOptions options = new SolveOptions(timeLimit, 0);
+		options.start();
+		FutureTask<SolveResult<Pattern>> task = new FutureTask<SolveResult<Pattern>>(new Callable<SolveResult<Pattern>>() {
+			@Override
+			public SolveResult<Pattern> call() throws Exception {
+				if (pieces.size() > DECOMPOSE_ABOVE) {
+					// takes the permits for its own solves; waiting for the sub-orders takes none
+					return decomposer.solve(new ArrayList<Piece>(pieces), rodLength, options, SolveListener.<Pattern>none(), cache);
+				}
+				permits.acquireUninterruptibly();
+				try {
+					return CuttingStockSolver.solve(new ArrayList<Piece>(pieces), rodLength, options, SolveListener.<Pattern>none(), cache);
+				} finally {
+					permits.release();
+				}
+			}
+		}) {
+			@Override
+			protected void done() {
+				// only this solve: a later one may have been registered under the same fingerprint
+				inFlight.remove(fingerprint, this);
+			}
+		};
+		Future<SolveResult<Pattern>> running = inFlight.putIfAbsent(fingerprint, task);
+		if (running != null) {
+			Log.debug("Sharing the solve of {}", fingerprint);
+			return running;
+		}
+		solvers.execute(task);
+		return task;
+	}
+
+	/**
+	 * Claims the new job files in the inbox and submits them
+	 */
+	private void pollInbox() {
+		File[] files = inbox.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (!file.isFile() || !file.getName().endsWith(JOB)) {
+				continue;
+			}
+			final String name = file.getName().substring(0, file.getName().length() - JOB.length());
+			final File working = new File(inbox, file.getName() + WORKING);
+			if (!file.renameTo(working)) {
+				continue;		// claimed by someone else, or still being written
+			}
+			try {
+				Scanner s = new Scanner(working);
+				int rodLength = s.nextInt();
+				List<Piece> pieces = new ArrayList<Piece>();
+				while (s.hasNextInt()) {
+					int index = s.nextInt();
+					pieces.add(new Piece(index, s.nextInt()));
+				}
+				s.close();
+				final Future<SolveResult<Pattern>> result = submit(name, pieces, rodLength);
+				jobs.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							Log.info("Job {}: {}", name, result.get());
+						} catch (Exception e) {
+							Log.error("Job {} failed: {}", name, e);
+						}
+						working.renameTo(new File(done, name + JOB));
+					}
+				});
+			} catch (Exception e) {
+				Log.error("Cannot read job {}: {}", name, e);
+				working.renameTo(new File(done, name + JOB));
+			}
+		}
+	}
+
+	private static void writeSolution(File file, SolveResult<Pattern> result) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			StringBuilder sb = new StringBuilder();
+			sb.append("status ").append(result.getStatus()).append('\n')
+				.append("rods ").append(result.getObjective()).append('\n')
+				.append("bound ").append(result.getBound()).append('\n')
+				.append("seconds ").append(result.getSeconds()).append('\n');
+			if (result.getPatterns() != null) {
+				for (Pattern p : result.getPatterns()) {
+					for (Piece pi : p.getPieces()) {
+						pi.appendTo(sb).append(' ');
+					}
+					sb.append('\n');
+				}
+			}
+			out.write(sb.toString());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static ThreadFactory threads(final String prefix) {
+		final AtomicInteger counter = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Usage: SolverService inbox outbox [solverThreads] [secondsPerOrder] [cacheDirectory]
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 2) {
+			System.err.println("Usage: SolverService inbox outbox [solverThreads] [secondsPerOrder] [cacheDirectory]");
+			return;
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+		SolutionCache cache = new SolutionCache(10000, 50000000L, args.length > 4 ? new File(args[4]) : null);
+		final SolverService service = new SolverService(new File(args[0]), new File(args[1]), threads, seconds, cache);
+		service.start();
+		Log.info("Watching {} with {} solver threads", args[0], threads);
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					service.stop();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}));
+		Thread.currentThread().join();
+	}
+}
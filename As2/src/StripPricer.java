@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exact pricing for two-stage guillotine patterns, by dynamic programming instead of a MIP.
+ * The items are sorted by height, so the items that fit in a strip of height h are a prefix of them.
+ * Row k of the strip DP is the best value of a strip of every width with the first k items (each at most
+ * as often as it is demanded), so one table gives the best strip of every height class. The outer
+ * knapsack then stacks strips up to the height of the sheet.
+ * Row k depends on the duals of all items before it, so a new dual of a short item changes every row
+ * after it; the table is computed again for every call, which takes O(n * width * log(demand)).
+ */
+class StripPricer implements ColumnGeneration.Pricer<Pattern2D> {
+
+	private static final double EPSILON = 1e-9;
+
+	private final List<Item2D> items;
+	private final int width;
+	private final int height;
+	// the most copies of an item in one strip
+	private final int[] bound;
+	// rows[k][c]: best value of width c with the first k items
+	private final double[][] rows;
+	private double value;
+
+	/**
+	 * Constructor
+	 * @param items sorted by height, increasing
+	 * @param sheet
+	 */
+	StripPricer(List<Item2D> items, Sheet sheet) {
+		this.items = items;
+		this.width = sheet.getWidth();
+		this.height = sheet.getHeight();
+		int n = items.size();
+		this.bound = new int[n];
+		for (int i = 0; i < n; i++) {
+			bound[i] = Math.min(items.get(i).getDemand(), width / items.get(i).getWidth());
+		}
+		this.rows = new double[n + 1][width + 1];
+	}
+
+	/**
+	 * The best pattern, if its reduced cost 1 - value is negative
+	 */
+	@Override
+	public List<Pattern2D> price(double[] duals, int index, ColGenMetrics metrics) {
+		Pattern2D pattern = price(duals, index);
+		double reducedCost = 1 - value;
+		metrics.priced(ColGenMetrics.KNAPSACK, reducedCost);
+		if (reducedCost >= -EPSILON) {
+			return Collections.emptyList();
+		}
+		return Collections.singletonList(pattern);
+	}
+
+	/**
+	 * Finds the pattern with the highest total dual value
+	 * @param duals per item
+	 * @param index of the new pattern
+	 * @return the pattern; its value is given by getValue
+	 */
+	Pattern2D price(double[] duals, int index) {
+		int n = items.size();
+		for (int k = 0; k < n; k++) {
+			addItem(k, duals[k]);
+		}
+
+		// the best strip of every height class: the last item of that height ends the prefix
+		List<Integer> ends = new ArrayList<Integer>();
+		for (int k = 0; k < n; k++) {
+			if (k == n - 1 || items.get(k + 1).getHeight() != items.get(k).getHeight()) {
+				ends.add(k + 1);
+			}
+		}
+		int classes = ends.size();
+		int[] classHeight = new int[classes];
+		double[] classValue = new double[classes];
+		for (int j = 0; j < classes; j++) {
+			classHeight[j] = items.get(ends.get(j) - 1).getHeight();
+			classValue[j] = rows[ends.get(j)][width];
+		}
+
+		// outer knapsack over the height of the sheet, every strip as often as it fits
+		double[] best = new double[height + 1];
+		int[] choice = new int[height + 1];
+		for (int c = 1; c <= height; c++) {
+			best[c] = best[c - 1];
+			choice[c] = -1;
+			for (int j = 0; j < classes && classHeight[j] <= c; j++) {
+				double candidate = best[c - classHeight[j]] + classValue[j];
+				if (candidate > best[c] + EPSILON) {
+					best[c] = candidate;
+					choice[c] = j;
+				}
+			}
+		}
+		value = best[height];
+
+		// read back the strips
+		List<int[]> strips = new ArrayList<int[]>();
+		List<Integer> heights = new ArrayList<Integer>();
+		int[][] content = new int[classes][];
+		int c = height;
+		while (c > 0) {
+			int j = choice[c];
+			if (j < 0) {
+				c--;
+				continue;
+			}
+			if (content[j] == null) {
+				content[j] = strip(ends.get(j), duals);
+			}
+			strips.add(content[j]);
+			heights.add(classHeight[j]);
+			c = c - classHeight[j];
+		}
+		int[] stripHeights = new int[heights.size()];
+		for (int s = 0; s < stripHeights.length; s++) {
+			stripHeights[s] = heights.get(s);
+		}
+		return new Pattern2D(index, stripHeights, strips.toArray(new int[strips.size()][]));
+	}
+
+	/**
+	 * Total dual value of the last pattern found
+	 * @return
+	 */
+	double getValue() {
+		return value;
+	}
+
+	/**
+	 * Computes row k+1 from row k: item k, at most bound[k] times, as 0-1 items of 1, 2, 4, ... copies
+	 */
+	private void addItem(int k, double dual) {
+		double[] previous = rows[k];
+		double[] row = rows[k + 1];
+		System.arraycopy(previous, 0, row, 0, width + 1);
+		if (dual <= EPSILON) {
+			return;
+		}
+		int w = items.get(k).getWidth();
+		int left = bound[k];
+		for (int copies = 1; left > 0; copies = copies * 2) {
+			int take = Math.min(copies, left);
+			left = left - take;
+			int size = take * w;
+			double gain = take * dual;
+			for (int c = width; c >= size; c--) {
+				double candidate = row[c - size] + gain;
+				if (candidate > row[c]) {
+					row[c] = candidate;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The items of the best strip with the first end items, read back from the rows
+	 */
+	private int[] strip(int end, double[] duals) {
+		int[] counts = new int[items.size()];
+		int c = width;
+		for (int k = end - 1; k >= 0; k--) {
+			double target = rows[k + 1][c];
+			int w = items.get(k).getWidth();
+			for (int t = 0; t <= bound[k] && t * w <= c; t++) {
+				if (Math.abs(rows[k][c - t * w] + t * duals[k] - target) <= EPSILON * Math.max(1, Math.abs(target))) {
+					counts[k] = t;
+					c = c - t * w;
+					break;
+				}
+			}
+		}
+		return counts;
+	}
+}